@@ -72,6 +72,10 @@ public @interface Column {
     /**
      * Specifies a storage type for the column to suppress automatic migration for existing tables.
      * <strong>Not recommended</strong>.  Will become deprecated in a future.
+     * <p>
+     * {@code "BLOB"} selects the built-in binary serializers for {@code BigDecimal}, {@code UUID} and string collections
+     * unless {@code @StaticTypeAdapter} is defined for the type. Existing values are not converted.
+     * </p>
      *
      * @return An SQLite data type. e.g. {@code "TEXT"}, {@code "FLOAT"}, {@code "INTEGER"}, or {@code "BLOB"}
      */
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma.benchmark;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import java.io.File;
+
+/**
+ * Runs JMH benchmarks in the Robolectric environment, which is enabled only with {@code -Pbenchmark}.
+ * JMH cannot fork JVMs here because Robolectric's runtime is set up by the test runner.
+ *
+ * @see <a href="http://openjdk.java.net/projects/code-tools/jmh/">JMH</a>
+ */
+@RunWith(AndroidJUnit4.class)
+public class BenchmarkRunnerTest {
+
+    @Test
+    public void runBenchmarks() throws Exception {
+        Assume.assumeTrue("Enabled by -Pbenchmark", Boolean.getBoolean("orma.benchmark"));
+
+        String result = System.getProperty("orma.benchmark.result", "build/reports/jmh/results.json");
+        File resultDir = new File(result).getParentFile();
+        if (resultDir != null && !resultDir.exists() && !resultDir.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + resultDir);
+        }
+
+        Options options = new OptionsBuilder()
+                .include(BenchmarkRunnerTest.class.getPackage().getName() + ".*"
+                        + System.getProperty("orma.benchmark.include", ".*"))
+                .forks(0)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result)
+                .build();
+        new Runner(options).run();
+    }
+}
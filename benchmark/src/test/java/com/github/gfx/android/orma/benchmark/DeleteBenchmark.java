@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma.benchmark;
+
+import com.github.gfx.android.orma.benchmark.model.OrmaDatabase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DeleteBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int rows;
+
+    OrmaDatabase orma;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        orma = Fixtures.openDatabase();
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+        Fixtures.insertBooks(orma, rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Fixtures.closeDatabase(orma);
+    }
+
+    @Benchmark
+    public int deleteAll() {
+        return orma.deleteFromBook().execute();
+    }
+
+    @Benchmark
+    public int deleteWithCondition() {
+        int count = orma.deleteFromBook().priceGe(rows / 2).execute();
+        orma.deleteFromBook().execute();
+        return count;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma.benchmark;
+
+import com.github.gfx.android.orma.AccessThreadConstraint;
+import com.github.gfx.android.orma.Inserter;
+import com.github.gfx.android.orma.benchmark.model.Author;
+import com.github.gfx.android.orma.benchmark.model.Book;
+import com.github.gfx.android.orma.benchmark.model.OrmaDatabase;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared fixtures for benchmarks. Each benchmark opens its own on-disk database so that I/O costs are included.
+ */
+public class Fixtures {
+
+    static final String NAME = "benchmark.db";
+
+    static final String CONTENT = "content content content\n"
+            + "content content content\n"
+            + "content content content\n";
+
+    static Context getContext() {
+        return InstrumentationRegistry.getTargetContext();
+    }
+
+    @NonNull
+    public static OrmaDatabase openDatabase() {
+        getContext().deleteDatabase(NAME);
+        OrmaDatabase orma = OrmaDatabase.builder(getContext())
+                .name(NAME)
+                .readOnMainThread(AccessThreadConstraint.NONE)
+                .writeOnMainThread(AccessThreadConstraint.NONE)
+                .trace(false)
+                .build();
+        orma.migrate();
+        return orma;
+    }
+
+    public static void closeDatabase(@NonNull OrmaDatabase orma) {
+        orma.getConnection().close();
+        getContext().deleteDatabase(NAME);
+    }
+
+    @NonNull
+    public static Author insertAuthor(@NonNull OrmaDatabase orma) {
+        Author author = orma.selectFromAuthor().nameEq("author").valueOrNull();
+        return author != null ? author : orma.relationOfAuthor().upsert(Author.create("author"));
+    }
+
+    @NonNull
+    public static Book newBook(int i, @NonNull Author author) {
+        Book book = new Book();
+        book.title = "title " + i;
+        book.content = CONTENT + i;
+        book.price = i;
+        book.publishedTime = System.currentTimeMillis();
+        book.author = author;
+        return book;
+    }
+
+    @NonNull
+    public static List<Book> newBooks(int rows, @NonNull Author author) {
+        List<Book> books = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            books.add(newBook(i, author));
+        }
+        return books;
+    }
+
+    public static void insertBooks(@NonNull OrmaDatabase orma, final int rows) {
+        final Author author = insertAuthor(orma);
+        final Inserter<Book> inserter = orma.prepareInsertIntoBook();
+        try {
+            orma.transactionSync(new Runnable() {
+                @Override
+                public void run() {
+                    inserter.executeAll(newBooks(rows, author));
+                }
+            });
+        } finally {
+            inserter.close();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma.benchmark;
+
+import com.github.gfx.android.orma.migration.SQLiteMaster;
+import com.github.gfx.android.orma.migration.SchemaDiffMigration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diffs the schemas of {@code tables} tables, a half of which have a new column and a new index,
+ * as {@link SchemaDiffMigration} does on start-up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MigrationBenchmark {
+
+    @Param({"10", "100"})
+    int tables;
+
+    SchemaDiffMigration migration;
+
+    Map<String, SQLiteMaster> srcSchemas;
+
+    List<SQLiteMaster> dstSchemas;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        migration = new SchemaDiffMigration(Fixtures.getContext(), "benchmark");
+        srcSchemas = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        dstSchemas = new ArrayList<>(tables);
+
+        for (int i = 0; i < tables; i++) {
+            String table = "table_" + i;
+            SQLiteMaster src = new SQLiteMaster("table", table, table, "CREATE TABLE `" + table + "` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT, `title` TEXT NOT NULL, `content` TEXT NULL)");
+            src.indexes.add(createIndex(table, "title"));
+            srcSchemas.put(table, src);
+
+            if (i % 2 == 0) {
+                dstSchemas.add(src);
+            } else {
+                SQLiteMaster dst = new SQLiteMaster("table", table, table, "CREATE TABLE `" + table + "` ("
+                        + "`id` INTEGER PRIMARY KEY AUTOINCREMENT, `title` TEXT NOT NULL, `content` TEXT NULL,"
+                        + " `price` INTEGER NOT NULL DEFAULT 0)");
+                dst.indexes.add(createIndex(table, "title"));
+                dst.indexes.add(createIndex(table, "price"));
+                dstSchemas.add(dst);
+            }
+        }
+    }
+
+    static SQLiteMaster createIndex(String table, String column) {
+        String name = "index_" + column + "_on_" + table;
+        return new SQLiteMaster("index", name, table,
+                "CREATE INDEX `" + name + "` ON `" + table + "` (`" + column + "`)");
+    }
+
+    @Benchmark
+    public List<String> diffAll() {
+        return migration.diffAll(srcSchemas, dstSchemas);
+    }
+}
@@ -27,6 +27,12 @@ public interface Database {
 
     Cursor rawQuery(String sql, String[] selectionArgs);
 
+    /**
+     * A variant of {@link #rawQuery(String, String[])} which binds arguments with their types,
+     * i.e. {@code null}, {@code long}, {@code double}, {@code byte[]} and {@code String}.
+     */
+    Cursor rawQuery(String sql, Object[] bindArgs);
+
     DatabaseStatement compileStatement(String sql);
 
     void beginTransaction();
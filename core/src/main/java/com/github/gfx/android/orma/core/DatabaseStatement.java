@@ -26,6 +26,8 @@ public interface DatabaseStatement {
 
     long executeInsert();
 
+    long simpleQueryForLong();
+
     void bindNull(int index);
 
     void bindLong(int index, long value);
@@ -35,4 +37,6 @@ public interface DatabaseStatement {
     void bindString(int index, String value);
 
     void bindBlob(int index, byte[] value);
+
+    void clearBindings();
 }
@@ -21,7 +21,10 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
 import android.os.Build;
 import android.support.annotation.NonNull;
 
@@ -48,6 +51,23 @@ public class DefaultDatabase implements Database {
         return database.rawQuery(sql, selectionArgs);
     }
 
+    @Override
+    public Cursor rawQuery(String sql, final Object[] bindArgs) {
+        if (bindArgs == null || bindArgs.length == 0) {
+            return database.rawQuery(sql, null);
+        }
+        return database.rawQueryWithFactory(new SQLiteDatabase.CursorFactory() {
+            @Override
+            public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable,
+                    SQLiteQuery query) {
+                for (int i = 0; i < bindArgs.length; i++) {
+                    DatabaseUtils.bindObjectToProgram(query, i + 1, bindArgs[i]);
+                }
+                return new SQLiteCursor(masterQuery, editTable, query);
+            }
+        }, sql, null, null);
+    }
+
     @Override
     public DatabaseStatement compileStatement(String sql) {
         return new DefaultDatabaseStatement(database.compileStatement(sql));
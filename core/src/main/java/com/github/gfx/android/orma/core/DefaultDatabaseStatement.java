@@ -46,6 +46,11 @@ class DefaultDatabaseStatement implements DatabaseStatement {
         return statement.executeInsert();
     }
 
+    @Override
+    public long simpleQueryForLong() {
+        return statement.simpleQueryForLong();
+    }
+
     @Override
     public void bindNull(int index) {
         statement.bindNull(index);
@@ -70,4 +75,9 @@ class DefaultDatabaseStatement implements DatabaseStatement {
     public void bindBlob(int index, byte[] value) {
         statement.bindBlob(index, value);
     }
+
+    @Override
+    public void clearBindings() {
+        statement.clearBindings();
+    }
 }
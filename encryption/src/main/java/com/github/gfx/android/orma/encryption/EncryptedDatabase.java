@@ -54,6 +54,11 @@ public class EncryptedDatabase implements Database {
         return database.rawQuery(sql, selectionArgs);
     }
 
+    @Override
+    public Cursor rawQuery(String sql, Object[] bindArgs) {
+        return database.rawQuery(sql, bindArgs);
+    }
+
     @Override
     public DatabaseStatement compileStatement(String sql) {
         return new EncryptedDatabaseStatement(database.compileStatement(sql));
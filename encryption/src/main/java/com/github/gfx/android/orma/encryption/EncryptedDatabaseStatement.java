@@ -53,6 +53,11 @@ class EncryptedDatabaseStatement implements DatabaseStatement {
         return statement.executeInsert();
     }
 
+    @Override
+    public long simpleQueryForLong() {
+        return statement.simpleQueryForLong();
+    }
+
     @Override
     public void bindNull(int index) {
         statement.bindNull(index);
@@ -77,4 +82,9 @@ class EncryptedDatabaseStatement implements DatabaseStatement {
     public void bindBlob(int index, byte[] value) {
         statement.bindBlob(index, value);
     }
+
+    @Override
+    public void clearBindings() {
+        statement.clearBindings();
+    }
 }
@@ -0,0 +1,548 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma;
+
+import com.github.gfx.android.orma.annotation.OnConflict;
+import com.github.gfx.android.orma.core.Database;
+import com.github.gfx.android.orma.core.DatabaseStatement;
+import com.github.gfx.android.orma.event.DataSetChangedEvent;
+import com.github.gfx.android.orma.exception.InvalidStatementException;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Base64;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Imports and exports rows of a table in CSV or JSON Lines, without creating model instances.
+ * <p>
+ * Import binds the values of each row to a compiled {@code INSERT} statement, committing every {@link #CHUNK_SIZE}
+ * rows; that is, the rows before a malformed one are kept. Values are bound as strings except for {@code NULL},
+ * booleans and {@code BLOB} columns, and converted by the column affinity of SQLite.
+ * Export streams the rows of the relation, where {@code BLOB} values are encoded in Base64.
+ * </p>
+ * In CSV, the first line is the header of column names, and an unquoted empty field is {@code NULL}.
+ * In JSON Lines, each line is an object whose keys are column names.
+ */
+public class BulkIO<Model> {
+
+    public static final int CHUNK_SIZE = BuildConfig.DEBUG ? 2 : 1000;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public enum Format {
+        CSV,
+        JSON_LINES,
+    }
+
+    final OrmaConnection conn;
+
+    final Relation<Model, ?> relation;
+
+    final Schema<Model> schema;
+
+    @OnConflict
+    final int onConflictAlgorithm;
+
+    public BulkIO(@NonNull Relation<Model, ?> relation) {
+        this(relation, OnConflict.NONE);
+    }
+
+    public BulkIO(@NonNull Relation<Model, ?> relation, @OnConflict int onConflictAlgorithm) {
+        this.conn = relation.getConnection();
+        this.relation = relation;
+        this.schema = relation.getSchema();
+        this.onConflictAlgorithm = onConflictAlgorithm;
+    }
+
+    /**
+     * @param format The format of {@code in}
+     * @param in     The input stream in UTF-8, which is not closed
+     * @return The number of rows read from {@code in}, including those ignored by {@link OnConflict#IGNORE}
+     * @throws IOException               if {@code in} is malformed
+     * @throws InvalidStatementException if {@code in} has an unknown column
+     */
+    @WorkerThread
+    public long importFrom(@NonNull Format format, @NonNull InputStream in) throws IOException {
+        Reader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+        Importer importer = new Importer();
+        try {
+            switch (format) {
+                case CSV:
+                    importCsv(new CsvReader(reader), importer);
+                    break;
+                case JSON_LINES:
+                    importJsonLines(new JsonReader(reader), importer);
+                    break;
+            }
+            importer.commit();
+        } finally {
+            importer.close();
+        }
+        return importer.count;
+    }
+
+    void importCsv(CsvReader reader, Importer importer) throws IOException {
+        List<String> header = reader.readRecord();
+        if (header == null) {
+            return;
+        }
+        ColumnDef<?, ?>[] columns = new ColumnDef[header.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = findColumn(header.get(i));
+        }
+        String key = buildKey(header);
+
+        List<String> record;
+        while ((record = reader.readRecord()) != null) {
+            if (record.size() != columns.length) {
+                throw new IOException("Expected " + columns.length + " fields but " + record.size()
+                        + " at line " + reader.lineNumber);
+            }
+            Object[] args = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                args[i] = decodeValue(columns[i], record.get(i));
+            }
+            importer.insert(key, columns, args);
+        }
+    }
+
+    void importJsonLines(JsonReader reader, Importer importer) throws IOException {
+        // lenient to read multiple top-level values
+        reader.setLenient(true);
+        List<String> names = new ArrayList<>();
+        List<ColumnDef<?, ?>> columns = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        while (reader.peek() != JsonToken.END_DOCUMENT) {
+            names.clear();
+            columns.clear();
+            args.clear();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                ColumnDef<?, ?> column = findColumn(name);
+                names.add(name);
+                columns.add(column);
+                switch (reader.peek()) {
+                    case NULL:
+                        reader.nextNull();
+                        args.add(null);
+                        break;
+                    case BOOLEAN:
+                        args.add(reader.nextBoolean());
+                        break;
+                    default:
+                        // numbers are kept as strings not to lose precision
+                        args.add(decodeValue(column, reader.nextString()));
+                        break;
+                }
+            }
+            reader.endObject();
+            importer.insert(buildKey(names), columns.toArray(new ColumnDef<?, ?>[columns.size()]), args.toArray());
+        }
+    }
+
+    @NonNull
+    ColumnDef<?, ?> findColumn(@NonNull String name) {
+        for (ColumnDef<?, ?> column : schema.getColumns()) {
+            if (column.name.equals(name)) {
+                return column;
+            }
+        }
+        throw new InvalidStatementException("No such column in " + schema.getTableName() + ": " + name);
+    }
+
+    @Nullable
+    static Object decodeValue(@NonNull ColumnDef<?, ?> column, @Nullable String value) {
+        if (value != null && isBlob(column)) {
+            return Base64.decode(value, Base64.DEFAULT);
+        }
+        return value;
+    }
+
+    static boolean isBlob(@NonNull ColumnDef<?, ?> column) {
+        return column.storageType.equalsIgnoreCase("BLOB");
+    }
+
+    static String buildKey(List<String> names) {
+        return names.toString();
+    }
+
+    @NonNull
+    String buildInsertStatement(@NonNull ColumnDef<?, ?>[] columns) {
+        StringBuilder sb = new StringBuilder("INSERT");
+        switch (onConflictAlgorithm) {
+            case OnConflict.NONE: /* nop */ break;
+            case OnConflict.ABORT: sb.append(" OR ABORT"); break;
+            case OnConflict.FAIL: sb.append(" OR FAIL"); break;
+            case OnConflict.IGNORE: sb.append(" OR IGNORE"); break;
+            case OnConflict.REPLACE: sb.append(" OR REPLACE"); break;
+            case OnConflict.ROLLBACK: sb.append(" OR ROLLBACK"); break;
+            default: throw new IllegalArgumentException("Invalid OnConflict algorithm: " + onConflictAlgorithm);
+        }
+        sb.append(" INTO ");
+        sb.append(schema.getEscapedTableName());
+        sb.append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i != 0) {
+                sb.append(',');
+            }
+            sb.append(columns[i].getEscapedName());
+        }
+        sb.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sb.append(i == 0 ? "?" : ",?");
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
+    /**
+     * @param format The format of {@code out}
+     * @param out    The output stream to write in UTF-8, which is flushed but not closed
+     * @return The number of exported rows
+     */
+    @WorkerThread
+    public long exportTo(@NonNull Format format, @NonNull OutputStream out) throws IOException {
+        List<ColumnDef<Model, ?>> columns = schema.getColumns();
+        String[] columnNames = new String[columns.size()];
+        for (int i = 0; i < columnNames.length; i++) {
+            columnNames[i] = columns.get(i).getQualifiedName();
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+        Cursor cursor = relation.selector().executeWithColumns(columnNames);
+        long count = 0;
+        try {
+            if (format == Format.CSV) {
+                for (int i = 0; i < columnNames.length; i++) {
+                    if (i != 0) {
+                        writer.write(',');
+                    }
+                    writeCsvString(writer, columns.get(i).name);
+                }
+                writer.write("\r\n");
+            }
+            while (cursor.moveToNext()) {
+                switch (format) {
+                    case CSV:
+                        writeCsvRecord(writer, cursor);
+                        break;
+                    case JSON_LINES:
+                        writeJsonLine(writer, columns, cursor);
+                        break;
+                }
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+        writer.flush();
+        return count;
+    }
+
+    static void writeCsvRecord(Writer writer, Cursor cursor) throws IOException {
+        for (int i = 0; i < cursor.getColumnCount(); i++) {
+            if (i != 0) {
+                writer.write(',');
+            }
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    writer.write(Long.toString(cursor.getLong(i)));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    writer.write(Double.toString(cursor.getDouble(i)));
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    writer.write(Base64.encodeToString(cursor.getBlob(i), Base64.NO_WRAP));
+                    break;
+                default:
+                    writeCsvString(writer, cursor.getString(i));
+                    break;
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    static void writeCsvString(Writer writer, String value) throws IOException {
+        // an empty string is quoted to be distinguished from NULL
+        if (!value.isEmpty() && !needsQuote(value)) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    static boolean needsQuote(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static void writeJsonLine(Writer writer, List<? extends ColumnDef<?, ?>> columns, Cursor cursor)
+            throws IOException {
+        writer.write('{');
+        for (int i = 0; i < columns.size(); i++) {
+            if (i != 0) {
+                writer.write(',');
+            }
+            writeJsonString(writer, columns.get(i).name);
+            writer.write(':');
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    writer.write("null");
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    writer.write(Long.toString(cursor.getLong(i)));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT: {
+                    double value = cursor.getDouble(i);
+                    if (Double.isNaN(value) || Double.isInfinite(value)) {
+                        writer.write("null");
+                    } else {
+                        writer.write(Double.toString(value));
+                    }
+                    break;
+                }
+                case Cursor.FIELD_TYPE_BLOB:
+                    writeJsonString(writer, Base64.encodeToString(cursor.getBlob(i), Base64.NO_WRAP));
+                    break;
+                default:
+                    writeJsonString(writer, cursor.getString(i));
+                    break;
+            }
+        }
+        writer.write("}\n");
+    }
+
+    static void writeJsonString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+                    break;
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Inserts rows in chunked transactions with statements compiled for each set of columns.
+     */
+    class Importer {
+
+        final Database db = conn.getWritableDatabase();
+
+        final Map<String, DatabaseStatement> statements = new HashMap<>();
+
+        final Map<String, String> sqls = new HashMap<>();
+
+        long count = 0;
+
+        long committedCount = 0;
+
+        int countInChunk = 0;
+
+        void insert(String key, ColumnDef<?, ?>[] columns, Object[] args) {
+            DatabaseStatement statement = statements.get(key);
+            String sql;
+            if (statement == null) {
+                sql = buildInsertStatement(columns);
+                statement = conn.statementCache.acquire(db, sql);
+                statements.put(key, statement);
+                sqls.put(key, sql);
+            } else {
+                sql = sqls.get(key);
+            }
+
+            if (countInChunk == 0) {
+                conn.trace("begin transaction", null);
+                db.beginTransaction();
+            }
+            conn.trace(sql, args);
+            OrmaConnection.bindAllArgs(statement, args);
+            statement.executeInsert();
+            count++;
+            if (++countInChunk == CHUNK_SIZE) {
+                commit();
+            }
+        }
+
+        void commit() {
+            if (countInChunk != 0) {
+                db.setTransactionSuccessful();
+                endTransaction();
+                committedCount = count;
+                conn.trigger(DataSetChangedEvent.Type.INSERT, schema);
+            }
+        }
+
+        void endTransaction() {
+            db.endTransaction();
+            conn.trace("end transaction", null);
+            countInChunk = 0;
+        }
+
+        void close() {
+            if (countInChunk != 0) {
+                // rolls back the incomplete chunk
+                endTransaction();
+                count = committedCount;
+            }
+            for (Map.Entry<String, DatabaseStatement> entry : statements.entrySet()) {
+                conn.statementCache.release(sqls.get(entry.getKey()), entry.getValue());
+            }
+            statements.clear();
+        }
+    }
+
+    /**
+     * A streaming reader of RFC 4180 CSV, where fields may contain quoted line breaks.
+     */
+    static class CsvReader {
+
+        final Reader reader;
+
+        int lineNumber = 0;
+
+        int next = -2;
+
+        CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        int read() throws IOException {
+            if (next != -2) {
+                int c = next;
+                next = -2;
+                return c;
+            }
+            return reader.read();
+        }
+
+        /**
+         * @return The fields of the next record, where an unquoted empty field is {@code null}, or {@code null} at EOF
+         */
+        @Nullable
+        List<String> readRecord() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            lineNumber++;
+
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (c == '"' && field.length() == 0 && !quoted) {
+                    quoted = true;
+                    while (true) {
+                        c = read();
+                        if (c == -1) {
+                            throw new IOException("Unterminated quoted field at line " + lineNumber);
+                        } else if (c == '"') {
+                            c = read();
+                            if (c != '"') {
+                                break;
+                            }
+                        } else if (c == '\n') {
+                            lineNumber++;
+                        }
+                        field.append((char) c);
+                    }
+                    continue;
+                }
+
+                if (c == ',' || c == '\n' || c == '\r' || c == -1) {
+                    fields.add(quoted || field.length() != 0 ? field.toString() : null);
+                    field.setLength(0);
+                    quoted = false;
+                    if (c == ',') {
+                        c = read();
+                        continue;
+                    }
+                    if (c == '\r') {
+                        int lf = read();
+                        if (lf != '\n') {
+                            next = lf;
+                        }
+                    }
+                    return fields;
+                }
+
+                if (quoted) {
+                    throw new IOException("Unexpected character after a quoted field at line " + lineNumber);
+                }
+                field.append((char) c);
+                c = read();
+            }
+        }
+    }
+}
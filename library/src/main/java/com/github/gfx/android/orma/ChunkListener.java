@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma;
+
+/**
+ * Reports the progress of {@link Deleter#executeInChunks(int, ChunkListener)} and
+ * {@link Updater#executeInChunks(int, ChunkListener)}.
+ */
+public interface ChunkListener {
+
+    /**
+     * Called after each chunk is committed, in the thread executing the chunks.
+     *
+     * @param count      The number of rows changed in the chunk
+     * @param totalCount The number of rows changed so far
+     * @return {@code false} to cancel the remaining chunks
+     */
+    boolean onChunkCommitted(int count, int totalCount);
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma;
+
+import android.database.Cursor;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import java.util.Arrays;
+
+/**
+ * Runs {@code DELETE} or {@code UPDATE} for ranges of row ids, each of which has at most {@code chunkSize} target rows
+ * and is committed in its own transaction. Other writers can take the write lock between chunks.
+ * <p>
+ * Because ranges are determined by row ids, rows are processed once even if {@code UPDATE} changes the condition.
+ * </p>
+ */
+abstract class ChunkedExecutor {
+
+    final OrmaConnection conn;
+
+    final Schema<?> schema;
+
+    @Nullable
+    final String whereClause;
+
+    @NonNull
+    final Object[] whereArgs;
+
+    final int chunkSize;
+
+    @Nullable
+    final ChunkListener listener;
+
+    ChunkedExecutor(@NonNull OrmaConnection conn, @NonNull Schema<?> schema, @Nullable String whereClause,
+            @Nullable Object[] whereArgs, @IntRange(from = 1) int chunkSize, @Nullable ChunkListener listener) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.conn = conn;
+        this.schema = schema;
+        this.whereClause = whereClause;
+        this.whereArgs = whereArgs != null ? whereArgs : new Object[0];
+        this.chunkSize = chunkSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Executes the statement for a chunk.
+     *
+     * @return The number of rows changed
+     */
+    abstract int executeChunk(@NonNull String whereClause, @NonNull Object[] whereArgs);
+
+    /**
+     * @return The number of rows changed until finished or cancelled
+     */
+    int execute() {
+        if (conn.getWritableDatabase().inTransaction()) {
+            throw new IllegalStateException("Chunked execution cannot be committed in a transaction");
+        }
+
+        String condition = TextUtils.isEmpty(whereClause) ? "" : "(" + whereClause + ") AND ";
+        final String boundQuery = "SELECT `_rowid_` FROM " + schema.getEscapedTableName()
+                + " WHERE " + condition + "`_rowid_` > ? ORDER BY `_rowid_` LIMIT 1 OFFSET " + (chunkSize - 1);
+        final String lastChunkClause = condition + "`_rowid_` > ?";
+        final String chunkClause = lastChunkClause + " AND `_rowid_` <= ?";
+
+        int totalCount = 0;
+        final long[] lowerBound = {Long.MIN_VALUE};
+        final int[] count = new int[1];
+        final boolean[] hasMoreChunks = {true};
+        while (hasMoreChunks[0]) {
+            conn.transactionSync(new Runnable() {
+                @Override
+                public void run() {
+                    Object[] args = Arrays.copyOf(whereArgs, whereArgs.length + 2);
+                    args[whereArgs.length] = lowerBound[0];
+
+                    Long upperBound = findUpperBound(boundQuery, Arrays.copyOf(args, whereArgs.length + 1));
+                    if (upperBound != null) {
+                        args[whereArgs.length + 1] = upperBound;
+                        count[0] = executeChunk(chunkClause, args);
+                        lowerBound[0] = upperBound;
+                    } else {
+                        count[0] = executeChunk(lastChunkClause, Arrays.copyOf(args, whereArgs.length + 1));
+                        hasMoreChunks[0] = false;
+                    }
+                }
+            });
+
+            totalCount += count[0];
+            if (listener != null && !listener.onChunkCommitted(count[0], totalCount)) {
+                break;
+            }
+        }
+        return totalCount;
+    }
+
+    @Nullable
+    Long findUpperBound(@NonNull String sql, @NonNull Object[] args) {
+        Cursor cursor = conn.rawQuery(sql, args);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -17,7 +17,10 @@ package com.github.gfx.android.orma;
 
 import com.github.gfx.android.orma.internal.OrmaConditionBase;
 
+import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 
 public abstract class Deleter<Model, D extends Deleter<Model, ?>> extends OrmaConditionBase<Model, D>
         implements Cloneable {
@@ -48,4 +51,30 @@ public abstract class Deleter<Model, D extends Deleter<Model, ?>> extends OrmaCo
     public int execute() {
         return conn.delete(getSchema(), getWhereClause(), getBindArgs());
     }
+
+    /**
+     * Deletes rows in chunks, each of which is committed in its own transaction, in order not to block other writers
+     * for long. Note that the whole operation is not atomic. It must not be called in a transaction.
+     *
+     * @param chunkSize The max number of rows deleted in a chunk
+     * @param listener  Called after each chunk is committed, which can cancel the remaining chunks
+     * @return Number of rows deleted.
+     */
+    @WorkerThread
+    public int executeInChunks(@IntRange(from = 1) int chunkSize, @Nullable ChunkListener listener) {
+        return new ChunkedExecutor(conn, getSchema(), getWhereClause(), getBindArgs(), chunkSize, listener) {
+            @Override
+            int executeChunk(@NonNull String whereClause, @NonNull Object[] whereArgs) {
+                return conn.delete(schema, whereClause, whereArgs);
+            }
+        }.execute();
+    }
+
+    /**
+     * @see #executeInChunks(int, ChunkListener)
+     */
+    @WorkerThread
+    public int executeInChunks(@IntRange(from = 1) int chunkSize) {
+        return executeInChunks(chunkSize, null);
+    }
 }
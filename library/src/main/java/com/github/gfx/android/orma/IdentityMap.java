@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A first-level cache of models keyed by their model classes and row ids, a.k.a. the identity map pattern.
+ * It is opened by {@link OrmaConnection#openIdentityMap()} for a unit of work on the current thread,
+ * and {@link OrmaConnection#findByRowId(Schema, long)} and {@link SingleAssociation} return cached models while
+ * it is open. Models are held by weak references, so they are cached while they are referred from elsewhere.
+ * <p>
+ * Writes through {@link Inserter}, {@link Updater}, {@link Deleter} and upserts invalidate the cached models of
+ * the table, and of the tables which have direct associations to it. Raw SQL statements do not.
+ * </p>
+ */
+public class IdentityMap implements Closeable {
+
+    final OrmaConnection conn;
+
+    final Map<Class<?>, Map<Long, WeakReference<Object>>> models = new HashMap<>();
+
+    final Map<Class<?>, Schema<?>> schemas = new HashMap<>();
+
+    int depth = 1;
+
+    IdentityMap(OrmaConnection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * @return The cached model for {@code rowId}, or {@code null} if missing
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    public synchronized <T> T get(@NonNull Schema<T> schema, long rowId) {
+        Map<Long, WeakReference<Object>> map = models.get(schema.getModelClass());
+        if (map == null) {
+            return null;
+        }
+        WeakReference<Object> ref = map.get(rowId);
+        if (ref == null) {
+            return null;
+        }
+        T model = (T) ref.get();
+        if (model == null) {
+            map.remove(rowId);
+        }
+        return model;
+    }
+
+    public synchronized <T> void put(@NonNull Schema<T> schema, long rowId, @NonNull T model) {
+        Map<Long, WeakReference<Object>> map = models.get(schema.getModelClass());
+        if (map == null) {
+            map = new HashMap<>();
+            models.put(schema.getModelClass(), map);
+            schemas.put(schema.getModelClass(), schema);
+        }
+        map.put(rowId, new WeakReference<Object>(model));
+    }
+
+    /**
+     * Removes the cached models of {@code schema} and those which directly associate with it.
+     *
+     * @param schema The schema of a modified table
+     */
+    public synchronized void invalidate(@NonNull Schema<?> schema) {
+        Iterator<Class<?>> iterator = models.keySet().iterator();
+        while (iterator.hasNext()) {
+            Class<?> modelClass = iterator.next();
+            if (modelClass == schema.getModelClass() || associates(schemas.get(modelClass), schema.getModelClass())) {
+                iterator.remove();
+                schemas.remove(modelClass);
+            }
+        }
+    }
+
+    static boolean associates(Schema<?> schema, Class<?> target) {
+        for (ColumnDef<?, ?> column : schema.getColumns()) {
+            if (column instanceof AssociationDef) {
+                Schema<?> associationSchema = ((AssociationDef<?, ?, ?>) column).associationSchema;
+                if (associationSchema.getModelClass() == target || associates(associationSchema, target)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public synchronized void clear() {
+        models.clear();
+        schemas.clear();
+    }
+
+    /**
+     * @return The number of the cached models, including those already collected
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (Map<Long, WeakReference<Object>> map : models.values()) {
+            size += map.size();
+        }
+        return size;
+    }
+
+    /**
+     * Ends the unit of work. Nested {@link OrmaConnection#openIdentityMap()} returns the same instance,
+     * which is closed by the outermost {@code close()}.
+     */
+    @Override
+    public void close() {
+        conn.closeIdentityMap(this);
+    }
+}
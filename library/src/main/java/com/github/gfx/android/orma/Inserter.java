@@ -22,8 +22,11 @@ import com.github.gfx.android.orma.event.DataSetChangedEvent;
 import com.github.gfx.android.orma.exception.InsertionFailureException;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 /**
@@ -31,23 +34,45 @@ import java.util.concurrent.Callable;
  */
 public class Inserter<Model> implements Closeable {
 
+    /**
+     * The default value of {@code SQLITE_MAX_VARIABLE_NUMBER}.
+     */
+    static final int MAX_BIND_ARGS = 999;
+
+    /**
+     * The default value of {@code SQLITE_MAX_COMPOUND_SELECT}, which also limits the number of rows in {@code VALUES}.
+     */
+    static final int MAX_ROWS_IN_VALUES = 500;
+
     final OrmaConnection conn;
 
     final Schema<Model> schema;
 
     final boolean withoutAutoId;
 
-    final DatabaseStatement statement;
+    @OnConflict
+    final int onConflictAlgorithm;
+
+    /**
+     * The statement taken out of the statement cache, or {@code null} after {@link #close()}.
+     */
+    @Nullable
+    DatabaseStatement statement;
 
     final String sql;
 
+    int numArgsPerRow = -1;
+
+    String batchSql;
+
     public Inserter(OrmaConnection conn, Schema<Model> schema, @OnConflict int onConflictAlgorithm, boolean withoutAutoId) {
         Database db = conn.getWritableDatabase();
         this.conn = conn;
         this.schema = schema;
         this.withoutAutoId = withoutAutoId;
+        this.onConflictAlgorithm = onConflictAlgorithm;
         sql = schema.getInsertStatement(onConflictAlgorithm, withoutAutoId);
-        statement = db.compileStatement(sql);
+        statement = conn.statementCache.acquire(db, sql);
     }
 
     public Inserter(OrmaConnection conn, Schema<Model> schema) {
@@ -65,12 +90,25 @@ public class Inserter<Model> implements Closeable {
         if (conn.trace) {
             conn.trace(sql, schema.convertToArgs(conn, model, withoutAutoId));
         }
+        DatabaseStatement statement = this.statement;
+        if (statement == null) {
+            throw new IllegalStateException("Inserter has been closed");
+        }
         schema.bindArgs(conn, statement, model, withoutAutoId);
         long rowId = statement.executeInsert();
-        conn.trigger(DataSetChangedEvent.Type.INSERT, schema);
+        conn.trigger(DataSetChangedEvent.Type.INSERT, schema, getChangedRowIds(rowId));
         return rowId;
     }
 
+    @Nullable
+    long[] getChangedRowIds(long rowId) {
+        if (onConflictAlgorithm == OnConflict.REPLACE) {
+            // the replaced row might have another row id
+            return null;
+        }
+        return rowId != -1 ? new long[]{rowId} : new long[0];
+    }
+
     /**
      * @param modelFactory A mode factory to create a model object to insert
      * @return The last inserted row id
@@ -89,6 +127,109 @@ public class Inserter<Model> implements Closeable {
         }
     }
 
+    /**
+     * <p>Inserts {@code models} with multi-row {@code INSERT} statements, each of which has as many rows as SQLite's
+     * limits of bind arguments and compound {@code SELECT} allow. The data set changed event is fired once, not for each row.</p>
+     * <p>
+     * Each chunk is atomic, but the whole call is not; call it in {@link OrmaConnection#transactionSync(Runnable)} if you
+     * want to insert all or nothing.
+     * </p>
+     *
+     * @param models model objects to insert
+     * @return The number of rows inserted, which might be less than the size of {@code models} for {@code INSERT OR
+     * IGNORE}.
+     */
+    public int executeAllInBatch(@NonNull Iterable<Model> models) {
+        int batchSize = getBatchSize();
+        List<Model> chunk = new ArrayList<>(batchSize);
+        int count = 0;
+        for (Model model : models) {
+            chunk.add(model);
+            if (chunk.size() == batchSize) {
+                count += executeChunk(chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            count += executeChunk(chunk);
+        }
+
+        if (count != 0) {
+            conn.trigger(DataSetChangedEvent.Type.INSERT, schema);
+        }
+        return count;
+    }
+
+    int getNumArgsPerRow() {
+        if (numArgsPerRow == -1) {
+            int n = 0;
+            for (ColumnDef<Model, ?> column : schema.getColumns()) {
+                if (!(withoutAutoId && column.isAutoValue())) {
+                    n++;
+                }
+            }
+            numArgsPerRow = n;
+        }
+        return numArgsPerRow;
+    }
+
+    int getBatchSize() {
+        return Math.max(1, Math.min(MAX_ROWS_IN_VALUES, MAX_BIND_ARGS / Math.max(1, getNumArgsPerRow())));
+    }
+
+    int executeChunk(@NonNull List<Model> chunk) {
+        int size = chunk.size();
+        String chunkSql;
+        if (size == getBatchSize()) {
+            if (batchSql == null) {
+                batchSql = buildMultiRowInsertStatement(size);
+            }
+            chunkSql = batchSql;
+        } else {
+            chunkSql = buildMultiRowInsertStatement(size);
+        }
+
+        DatabaseStatement statement = conn.statementCache.acquire(conn.getWritableDatabase(), chunkSql);
+        try {
+            if (conn.trace) {
+                Object[] args = new Object[size];
+                for (int i = 0; i < size; i++) {
+                    args[i] = schema.convertToArgs(conn, chunk.get(i), withoutAutoId);
+                }
+                conn.trace(sql + " * " + size + " rows", args);
+            }
+
+            int n = getNumArgsPerRow();
+            for (int i = 0; i < size; i++) {
+                schema.bindArgs(conn, statement, chunk.get(i), withoutAutoId, i * n);
+            }
+            return statement.executeUpdateDelete();
+        } finally {
+            conn.statementCache.release(chunkSql, statement);
+        }
+    }
+
+    /**
+     * Builds {@code INSERT INTO ... SELECT ?, ? UNION ALL SELECT ?, ? ...} from the single-row {@code INSERT} statement.
+     * Multi-row {@code VALUES} is not used because it requires SQLite 3.7.11 (Android API 16).
+     */
+    @NonNull
+    String buildMultiRowInsertStatement(int numRows) {
+        // sql is "INSERT ... VALUES (?,?,...)"
+        int valuesPos = sql.lastIndexOf(" VALUES (");
+        String row = sql.substring(valuesPos + " VALUES (".length(), sql.length() - 1);
+
+        StringBuilder sb = new StringBuilder(valuesPos + (row.length() + " UNION ALL SELECT ".length()) * numRows);
+        sb.append(sql, 0, valuesPos);
+        sb.append(" SELECT ");
+        sb.append(row);
+        for (int i = 1; i < numRows; i++) {
+            sb.append(" UNION ALL SELECT ");
+            sb.append(row);
+        }
+        return sb.toString();
+    }
+
     /**
      * Does {@link #execute(Object)} and then does {@link #close()} immediately
      *
@@ -103,8 +244,14 @@ public class Inserter<Model> implements Closeable {
         }
     }
 
+    /**
+     * Gives the statement back to the connection. The inserter can no longer be used.
+     */
     @Override
     public void close() {
-        statement.close();
+        if (statement != null) {
+            conn.statementCache.release(sql, statement);
+            statement = null;
+        }
     }
 }
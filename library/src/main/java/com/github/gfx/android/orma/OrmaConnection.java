@@ -24,6 +24,9 @@ import com.github.gfx.android.orma.exception.DatabaseAccessOnMainThreadException
 import com.github.gfx.android.orma.exception.InsertionFailureException;
 import com.github.gfx.android.orma.exception.NoValueException;
 import com.github.gfx.android.orma.migration.MigrationEngine;
+import com.github.gfx.android.orma.migration.SQLiteMaster;
+import com.github.gfx.android.orma.migration.SchemaDiffMigration;
+import com.github.gfx.android.orma.migration.TraceListener;
 import com.github.gfx.android.orma.migration.sqliteparser.SQLiteParserUtils;
 
 import android.annotation.TargetApi;
@@ -41,7 +44,16 @@ import android.util.Log;
 
 import java.io.Closeable;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Low-level interface to Orma database connection.
@@ -50,6 +62,8 @@ public class OrmaConnection implements Closeable {
 
     static final String TAG = "Orma";
 
+    static final String MIGRATION_THREAD_NAME = "Orma-Migration";
+
     final String name;
 
     /**
@@ -61,6 +75,8 @@ public class OrmaConnection implements Closeable {
 
     final MigrationEngine migration;
 
+    final TraceListener migrationTraceListener;
+
     final boolean wal;
 
     final boolean foreignKeys;
@@ -75,13 +91,41 @@ public class OrmaConnection implements Closeable {
 
     final DataSetChangedTrigger trigger = new DataSetChangedTrigger.NoOp();
 
-    boolean migrationCompleted = false;
+    final StatementCache statementCache;
+
+    final int writeQueueBatchSize;
+
+    final long writeQueueDelayMillis;
+
+    @Nullable
+    volatile WriteQueue writeQueue;
+
+    final boolean identityMapInTransaction;
+
+    final ThreadLocal<IdentityMap> identityMap = new ThreadLocal<>();
+
+    final Set<IdentityMap> openIdentityMaps = Collections.newSetFromMap(new ConcurrentHashMap<IdentityMap, Boolean>());
+
+    /**
+     * Readers and writers check it without locks once the migration is completed.
+     */
+    volatile boolean migrationCompleted = false;
+
+    final Object migrationFutureLock = new Object();
+
+    @Nullable
+    FutureTask<Void> migrationFuture;
+
+    @Nullable
+    volatile String sqliteVersion;
 
     public OrmaConnection(@NonNull OrmaDatabaseBuilderBase<?> builder, List<Schema<?>> schemas) {
         this.name = builder.name;
 
         this.schemas = schemas;
         this.migration = builder.migrationEngine;
+        this.migrationTraceListener = builder.migrationTraceListener != null
+                ? builder.migrationTraceListener : TraceListener.EMPTY;
         this.foreignKeys = builder.foreignKeys;
         this.wal = builder.wal;
 
@@ -89,9 +133,11 @@ public class OrmaConnection implements Closeable {
         this.trace = builder.trace;
         this.readOnMainThread = builder.readOnMainThread;
         this.writeOnMainThread = builder.writeOnMainThread;
+        this.statementCache = new StatementCache(builder.statementCacheSize);
+        this.writeQueueBatchSize = builder.writeQueueBatchSize;
+        this.writeQueueDelayMillis = builder.writeQueueDelayMillis;
+        this.identityMapInTransaction = builder.identityMapInTransaction;
         this.db = openDatabase(builder);
-
-        checkSchemas(schemas);
     }
 
     private Database openDatabase(OrmaDatabaseBuilderBase<?> builder) {
@@ -128,7 +174,84 @@ public class OrmaConnection implements Closeable {
         return schemas;
     }
 
-    public synchronized Database getWritableDatabase() {
+    /**
+     * @return The cache of compiled statements, shared by inserters, updaters, deleters and {@code COUNT} queries
+     */
+    @NonNull
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    /**
+     * Opens an identity map for a unit of work on the current thread, which must be closed in the same thread.
+     * If an identity map is already open on the thread, it is returned and closed by the outermost {@code close()}.
+     *
+     * @return The identity map of the current thread
+     */
+    @NonNull
+    public IdentityMap openIdentityMap() {
+        IdentityMap map = identityMap.get();
+        if (map != null) {
+            map.depth++;
+            return map;
+        }
+        map = new IdentityMap(this);
+        identityMap.set(map);
+        openIdentityMaps.add(map);
+        return map;
+    }
+
+    void closeIdentityMap(IdentityMap map) {
+        if (identityMap.get() != map) {
+            throw new IllegalStateException("IdentityMap must be closed in the thread which opened it");
+        }
+        if (--map.depth == 0) {
+            identityMap.remove();
+            openIdentityMaps.remove(map);
+            map.clear();
+        }
+    }
+
+    /**
+     * @return The identity map of the current thread, or {@code null} if not open
+     */
+    @Nullable
+    public IdentityMap getIdentityMap() {
+        return identityMap.get();
+    }
+
+    void invalidateIdentityMaps(Schema<?> schema) {
+        for (IdentityMap map : openIdentityMaps) {
+            map.invalidate(schema);
+        }
+    }
+
+    /**
+     * @return The write-behind queue of this connection, whose writer thread starts on the first call
+     */
+    @NonNull
+    public WriteQueue getWriteQueue() {
+        WriteQueue queue = writeQueue;
+        if (queue == null) {
+            synchronized (this) {
+                queue = writeQueue;
+                if (queue == null) {
+                    queue = new WriteQueue(this, writeQueueBatchSize, writeQueueDelayMillis);
+                    writeQueue = queue;
+                }
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * With write-ahead logging enabled, the framework's connection pool serves reads on other threads with
+     * secondary connections, so they do not wait for a transaction in progress.
+     * This method does not lock the connection once the migration is completed.
+     *
+     * @return The database to write things
+     */
+    public Database getWritableDatabase() {
         if (writeOnMainThread != AccessThreadConstraint.NONE) {
             if (Looper.getMainLooper().getThread() == Thread.currentThread()) {
                 if (writeOnMainThread == AccessThreadConstraint.FATAL) {
@@ -138,14 +261,15 @@ public class OrmaConnection implements Closeable {
                 }
             }
         }
-        if (!migrationCompleted) {
-            onMigrate(db);
-            migrationCompleted = true;
-        }
+        ensureMigrated();
         return db;
     }
 
-    public synchronized Database getReadableDatabase() {
+    /**
+     * @return The database to read things
+     * @see #getWritableDatabase()
+     */
+    public Database getReadableDatabase() {
         if (readOnMainThread != AccessThreadConstraint.NONE) {
             if (Looper.getMainLooper().getThread() == Thread.currentThread()) {
                 if (readOnMainThread == AccessThreadConstraint.FATAL) {
@@ -155,17 +279,51 @@ public class OrmaConnection implements Closeable {
                 }
             }
         }
+        ensureMigrated();
+        return db;
+    }
+
+    /**
+     * Starts the migration on a dedicated thread unless it is started or completed, in order not to block the thread
+     * which accesses the database first. Accesses to the database still wait for the migration to be completed.
+     *
+     * @return A future completed after the migration, which throws the exception thrown in the migration if any
+     */
+    @NonNull
+    public Future<Void> startMigrationInBackground() {
+        synchronized (migrationFutureLock) {
+            if (migrationFuture == null) {
+                migrationFuture = new FutureTask<>(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        ensureMigrated();
+                        return null;
+                    }
+                });
+                Thread thread = new Thread(migrationFuture, MIGRATION_THREAD_NAME);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            return migrationFuture;
+        }
+    }
+
+    void ensureMigrated() {
         if (!migrationCompleted) {
-            onMigrate(db);
-            migrationCompleted = true;
+            synchronized (this) {
+                if (!migrationCompleted) {
+                    onMigrate(db);
+                    migrationCompleted = true;
+                }
+            }
         }
-        return db;
     }
 
     public <T> long insert(Schema<T> schema, ContentValues contentValues, @OnConflict int onConflict) {
         if (trace) {
             traceInsert(schema, contentValues, onConflict);
         }
+        invalidateIdentityMaps(schema);
         return getWritableDatabase().insertWithOnConflict(schema.getEscapedTableName(), null, contentValues, onConflict);
     }
 
@@ -230,33 +388,73 @@ public class OrmaConnection implements Closeable {
         return findByRowId(schema, rowId);
     }
 
+    /**
+     * @return The version of SQLite, e.g. {@code "3.24.0"}
+     */
+    @NonNull
+    public String getSqliteVersion() {
+        String version = sqliteVersion;
+        if (version == null) {
+            Cursor cursor = rawQuery("SELECT sqlite_version()");
+            try {
+                cursor.moveToFirst();
+                version = cursor.getString(0);
+            } finally {
+                cursor.close();
+            }
+            sqliteVersion = version;
+        }
+        return version;
+    }
+
+    /**
+     * @return {@code true} if SQLite is {@code major.minor} or later, e.g. {@code (3, 24)} for {@code UPSERT}
+     */
+    public boolean isSqliteVersionAtLeast(int major, int minor) {
+        String[] parts = getSqliteVersion().split("\\.");
+        try {
+            int actualMajor = Integer.parseInt(parts[0]);
+            int actualMinor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return actualMajor > major || (actualMajor == major && actualMinor >= minor);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
     public <T> T findByRowId(Schema<T> schema, long rowId) {
+        IdentityMap map = identityMap.get();
+        if (map != null) {
+            T cachedModel = map.get(schema, rowId);
+            if (cachedModel != null) {
+                return cachedModel;
+            }
+        }
+
         String tableAlias = schema.getEscapedTableAlias();
 
         String whereClause = (tableAlias == null ? "" : tableAlias + ".") + "`_rowid_` = ?";
-        String[] whereArgs = {String.valueOf(rowId)};
+        Object[] whereArgs = {rowId};
 
         T createdModel = querySingle(schema, schema.getDefaultResultColumns(), whereClause, whereArgs, null, null, null, 0);
         if (createdModel == null) {
             throw new NoValueException("Can't retrieve the created model for rowId="
                     + rowId + " in " + schema.getModelClass().getCanonicalName());
         }
+        if (map != null) {
+            map.put(schema, rowId, createdModel);
+        }
         return createdModel;
     }
 
-    public int update(Schema<?> schema, ContentValues values, String whereClause, String[] whereArgs) {
-        Database db = getWritableDatabase();
-        if (trace) {
-            traceUpdateQuery(schema, values, whereClause, whereArgs);
+    public int update(Schema<?> schema, ContentValues values, String whereClause, Object[] whereArgs) {
+        if (values.size() == 0) {
+            throw new IllegalArgumentException("Empty values");
         }
-        int count = db.update(schema.getEscapedTableName(), values, whereClause, whereArgs);
-        trigger(DataSetChangedEvent.Type.UPDATE, schema);
-        return count;
-    }
 
-    private void traceUpdateQuery(Schema<?> schema, ContentValues values, String whereClause, String[] whereArgs) {
+        Database db = getWritableDatabase();
+
         // copied from SQLiteDatabase#updateWithOnConflict()
-        StringBuilder sql = new StringBuilder();
+        StringBuilder sql = new StringBuilder(120);
         sql.append("UPDATE ");
         sql.append(schema.getEscapedTableName());
         sql.append(" SET ");
@@ -282,24 +480,105 @@ public class OrmaConnection implements Closeable {
             sql.append(whereClause);
         }
 
-        trace(sql, bindArgs);
+        String s = sql.toString();
+        trace(s, bindArgs);
+        boolean inOwnTransaction = beginTransactionToFindRowIds(db, schema);
+        long[] rowIds;
+        int count;
+        try {
+            rowIds = findRowIdsToChange(schema, whereClause, whereArgs);
+            DatabaseStatement statement = statementCache.acquire(db, s);
+            try {
+                bindAllArgs(statement, bindArgs);
+                count = statement.executeUpdateDelete();
+            } finally {
+                statementCache.release(s, statement);
+            }
+            if (inOwnTransaction) {
+                db.setTransactionSuccessful();
+            }
+        } finally {
+            if (inOwnTransaction) {
+                db.endTransaction();
+            }
+        }
+        trigger(DataSetChangedEvent.Type.UPDATE, schema, rowIds);
+        return count;
+    }
+
+    static void bindAllArgs(@NonNull DatabaseStatement statement, @NonNull Object[] bindArgs) {
+        // copied from SQLiteProgram#bindAllArgs() and DatabaseUtils#bindObjectToProgram()
+        for (int i = 0; i < bindArgs.length; i++) {
+            Object arg = bindArgs[i];
+            int index = i + 1;
+            if (arg == null) {
+                statement.bindNull(index);
+            } else if (arg instanceof byte[]) {
+                statement.bindBlob(index, (byte[]) arg);
+            } else if (arg instanceof Double || arg instanceof Float) {
+                statement.bindDouble(index, ((Number) arg).doubleValue());
+            } else if (isIntegralNumber(arg)) {
+                statement.bindLong(index, ((Number) arg).longValue());
+            } else if (arg instanceof Boolean) {
+                statement.bindLong(index, (Boolean) arg ? 1 : 0);
+            } else {
+                statement.bindString(index, arg.toString());
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if {@code value} is bound as an integer without loss, i.e. neither a floating point number
+     * nor an arbitrary-precision number such as {@code BigDecimal}, which is bound as a string
+     */
+    public static boolean isIntegralNumber(@Nullable Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof AtomicLong || value instanceof AtomicInteger;
+    }
+
+    /**
+     * Stringifies numbers which {@code DatabaseUtils#bindObjectToProgram()} would truncate into {@code long}.
+     */
+    static Object[] normalizeBindArgs(@Nullable Object[] bindArgs) {
+        if (bindArgs == null) {
+            return null;
+        }
+        Object[] normalized = bindArgs;
+        for (int i = 0; i < bindArgs.length; i++) {
+            Object arg = bindArgs[i];
+            if (arg instanceof Number && !isIntegralNumber(arg) && !(arg instanceof Double || arg instanceof Float)) {
+                if (normalized == bindArgs) {
+                    normalized = bindArgs.clone();
+                }
+                normalized[i] = arg.toString();
+            }
+        }
+        return normalized;
     }
 
     @NonNull
-    public Cursor rawQuery(@NonNull String sql, String... bindArgs) {
+    public Cursor rawQuery(@NonNull String sql, Object... bindArgs) {
         trace(sql, bindArgs);
         Database db = getReadableDatabase();
-        return db.rawQuery(sql, bindArgs);
+        return db.rawQuery(sql, normalizeBindArgs(bindArgs));
     }
 
-    public long rawQueryForLong(@NonNull String sql, String... bindArgs) {
+    public long rawQueryForLong(@NonNull String sql, Object... bindArgs) {
         trace(sql, bindArgs);
         Database db = getReadableDatabase();
-        return db.longForQuery(sql, bindArgs);
+        DatabaseStatement statement = statementCache.acquire(db, sql);
+        try {
+            if (bindArgs != null) {
+                bindAllArgs(statement, bindArgs);
+            }
+            return statement.simpleQueryForLong();
+        } finally {
+            statementCache.release(sql, statement);
+        }
     }
 
     @NonNull
-    public Cursor query(Schema<?> schema, String[] columns, String whereClause, String[] bindArgs,
+    public Cursor query(Schema<?> schema, String[] columns, String whereClause, Object[] bindArgs,
             String groupBy, String having, String orderBy, String limit) {
         String sql = SQLiteQueryBuilder.buildQueryString(
                 false, schema.getSelectFromTableClause(), columns, whereClause, groupBy, having, orderBy, limit);
@@ -307,7 +586,7 @@ public class OrmaConnection implements Closeable {
     }
 
     @Nullable
-    public <T> T querySingle(Schema<T> schema, String[] columns, String whereClause, String[] whereArgs, String groupBy,
+    public <T> T querySingle(Schema<T> schema, String[] columns, String whereClause, Object[] whereArgs, String groupBy,
             String having, String orderBy, long offset) {
         Cursor cursor = query(schema, columns, whereClause, whereArgs, groupBy, having, orderBy, offset + ",1");
 
@@ -322,21 +601,36 @@ public class OrmaConnection implements Closeable {
         }
     }
 
-    public int delete(@NonNull Schema<?> schema, @Nullable String whereClause, @Nullable String[] whereArgs) {
+    public int delete(@NonNull Schema<?> schema, @Nullable String whereClause, @Nullable Object[] whereArgs) {
         Database db = getWritableDatabase();
 
         String sql = "DELETE FROM " + schema.getEscapedTableName()
                 + (!TextUtils.isEmpty(whereClause) ? " WHERE " + whereClause : "");
-        trace(sql, whereArgs);
-        DatabaseStatement statement = db.compileStatement(sql);
-        statement.bindAllArgsAsStrings(whereArgs);
+        boolean inOwnTransaction = beginTransactionToFindRowIds(db, schema);
+        long[] rowIds;
+        int count;
         try {
-            int count = statement.executeUpdateDelete();
-            trigger(DataSetChangedEvent.Type.DELETE, schema);
-            return count;
+            rowIds = findRowIdsToChange(schema, whereClause, whereArgs);
+            trace(sql, whereArgs);
+            DatabaseStatement statement = statementCache.acquire(db, sql);
+            try {
+                if (whereArgs != null) {
+                    bindAllArgs(statement, whereArgs);
+                }
+                count = statement.executeUpdateDelete();
+            } finally {
+                statementCache.release(sql, statement);
+            }
+            if (inOwnTransaction) {
+                db.setTransactionSuccessful();
+            }
         } finally {
-            statement.close();
+            if (inOwnTransaction) {
+                db.endTransaction();
+            }
         }
+        trigger(DataSetChangedEvent.Type.DELETE, schema, rowIds);
+        return count;
     }
 
     public void transactionNonExclusiveSync(@NonNull Runnable task) {
@@ -358,15 +652,28 @@ public class OrmaConnection implements Closeable {
     @WorkerThread
     public void transactionSync(@NonNull Runnable task) {
         Database db = getWritableDatabase();
+        IdentityMap map = identityMapInTransaction ? openIdentityMap() : null;
         trace("begin transaction", null);
         db.beginTransaction();
+        boolean successful = false;
         try {
             task.run();
             db.setTransactionSuccessful();
+            successful = true;
         } finally {
             db.endTransaction();
             trace("end transaction", null);
 
+            if (!successful) {
+                // cached models might have uncommitted values
+                for (IdentityMap openMap : openIdentityMaps) {
+                    openMap.clear();
+                }
+            }
+            if (map != null) {
+                map.close();
+            }
+
             getTrigger().fireForTransaction();
         }
     }
@@ -386,7 +693,59 @@ public class OrmaConnection implements Closeable {
     }
 
     public <Model> void trigger(DataSetChangedEvent.Type type, Schema<Model> schema) {
-        getTrigger().fire(db, type, schema);
+        trigger(type, schema, null);
+    }
+
+    /**
+     * @param rowIds Row ids of the changed rows, or {@code null} if unknown
+     */
+    public <Model> void trigger(DataSetChangedEvent.Type type, Schema<Model> schema, @Nullable long[] rowIds) {
+        invalidateIdentityMaps(schema);
+        getTrigger().fire(db, type, schema, rowIds);
+    }
+
+    /**
+     * Begins a non-exclusive transaction if the table is observed and no transaction is in progress,
+     * so that no other writer can change the table between {@link #findRowIdsToChange(Schema, String, Object[])}
+     * and the following {@code UPDATE} or {@code DELETE}.
+     *
+     * @return {@code true} if a transaction has begun, which the caller must end
+     */
+    boolean beginTransactionToFindRowIds(@NonNull Database db, @NonNull Schema<?> schema) {
+        if (db.inTransaction() || !getTrigger().isObserving(schema)) {
+            return false;
+        }
+        db.beginTransactionNonExclusive();
+        return true;
+    }
+
+    /**
+     * Finds the row ids which {@code UPDATE} or {@code DELETE} is going to change, only if the table is observed.
+     *
+     * @return Row ids, or {@code null} if nobody observes the table or there are too many rows
+     */
+    @Nullable
+    long[] findRowIdsToChange(@NonNull Schema<?> schema, @Nullable String whereClause, @Nullable Object[] whereArgs) {
+        if (!getTrigger().isObserving(schema)) {
+            return null;
+        }
+
+        String sql = "SELECT `_rowid_` FROM " + schema.getEscapedTableName()
+                + (!TextUtils.isEmpty(whereClause) ? " WHERE " + whereClause : "")
+                + " LIMIT " + (DataSetChangedEvent.MAX_ROW_IDS + 1);
+        Cursor cursor = rawQuery(sql, whereArgs);
+        try {
+            if (cursor.getCount() > DataSetChangedEvent.MAX_ROW_IDS) {
+                return null;
+            }
+            long[] rowIds = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                rowIds[i] = cursor.getLong(0);
+            }
+            return rowIds;
+        } finally {
+            cursor.close();
+        }
     }
 
     public void execSQL(@NonNull String sql, @NonNull Object... bindArgs) {
@@ -403,15 +762,33 @@ public class OrmaConnection implements Closeable {
      */
     @Override
     public void close() {
+        WriteQueue queue = writeQueue;
+        if (queue != null) {
+            queue.close();
+        }
+        statementCache.close();
         db.close();
     }
 
-    protected void checkSchemas(List<Schema<?>> schemas) {
-        if (tryParsingSql) {
-            for (Schema<?> schema : schemas) {
+    /**
+     * Parses the {@code CREATE TABLE} statements which differ from the ones in the database, if {@code tryParsingSql}
+     * is on. Unchanged ones have been parsed when they were created, so they are not parsed again.
+     */
+    protected void checkSchemas(Database db, List<Schema<?>> schemas) {
+        if (!tryParsingSql) {
+            return;
+        }
+        Map<String, SQLiteMaster> tables = SchemaDiffMigration.loadMetadata(db, schemas);
+        int parsed = 0;
+        for (Schema<?> schema : schemas) {
+            SQLiteMaster table = tables.get(schema.getTableName());
+            if (table == null || !schema.getCreateTableStatement().equals(table.getCreateTableStatement())) {
                 SQLiteParserUtils.parse(schema.getCreateTableStatement());
+                parsed++;
             }
         }
+        migrationTraceListener.onTrace(migration, "parsed %d of %d schemas",
+                new Object[]{parsed, schemas.size()});
     }
 
     protected void execSQL(@NonNull Database db, @NonNull String sql) {
@@ -452,17 +829,16 @@ public class OrmaConnection implements Closeable {
     }
 
     protected void onMigrate(Database db) {
-        long t0 = 0;
-        if (trace) {
-            Log.i(TAG, "migration started");
-            t0 = System.currentTimeMillis();
-        }
+        long t0 = System.currentTimeMillis();
+        migrationTraceListener.onTrace(migration, "migration started in %s",
+                new Object[]{Thread.currentThread().getName()});
 
+        // parsed here, not in the constructor, to keep opening the connection cheap
+        checkSchemas(db, schemas);
         migration.start(db, schemas);
 
-        if (trace) {
-            Log.i(TAG, "migration finished in " + (System.currentTimeMillis() - t0) + "ms");
-        }
+        migrationTraceListener.onTrace(migration, "migration finished in %dms",
+                new Object[]{System.currentTimeMillis() - t0});
     }
 
     protected DataSetChangedTrigger getTrigger() {
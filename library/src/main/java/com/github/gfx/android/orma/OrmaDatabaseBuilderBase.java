@@ -58,12 +58,22 @@ public abstract class OrmaDatabaseBuilderBase<T extends OrmaDatabaseBuilderBase<
 
     boolean tryParsingSql;
 
+    boolean migrateInBackground = false;
+
     OrmaMigration.Builder ormaMigrationBuilder;
 
     AccessThreadConstraint readOnMainThread;
 
     AccessThreadConstraint writeOnMainThread;
 
+    int statementCacheSize = 32;
+
+    int writeQueueBatchSize = 256;
+
+    long writeQueueDelayMillis = 50;
+
+    boolean identityMapInTransaction = false;
+
     public OrmaDatabaseBuilderBase(@NonNull Context context) {
         this.context = context.getApplicationContext();
         this.debug = extractDebuggable(context);
@@ -139,6 +149,8 @@ public abstract class OrmaDatabaseBuilderBase<T extends OrmaDatabaseBuilderBase<
 
     /**
      * Controls write-ahead logging in SQLite. The default is {@code true}.
+     * With WAL, the framework keeps a primary connection for writing and a pool of connections for reading,
+     * so that readers on different threads run concurrently with each other and with a writer.
      *
      * @param wal {@code true} to enable WAL
      * @return the receiver itself
@@ -246,9 +258,84 @@ public abstract class OrmaDatabaseBuilderBase<T extends OrmaDatabaseBuilderBase<
         return (T) this;
     }
 
+    /**
+     * Sets the max number of compiled statements cached in the connection. The default is {@code 32}.
+     *
+     * @param statementCacheSize The size of the statement cache, or {@code 0} to disable it
+     * @return the receiver itself
+     */
+    public T statementCacheSize(@IntRange(from = 0) int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+        return (T) this;
+    }
+
+    /**
+     * Sets the max number of tasks committed in a transaction by {@link WriteQueue}. The default is {@code 256}.
+     *
+     * @param writeQueueBatchSize The max number of tasks in a transaction
+     * @return the receiver itself
+     */
+    public T writeQueueBatchSize(@IntRange(from = 1) int writeQueueBatchSize) {
+        this.writeQueueBatchSize = writeQueueBatchSize;
+        return (T) this;
+    }
+
+    /**
+     * Sets the max time for {@link WriteQueue} to wait for more tasks before committing a transaction.
+     * The default is {@code 50} milliseconds.
+     *
+     * @param writeQueueDelayMillis The max delay in milliseconds, or {@code 0} to commit queued tasks immediately
+     * @return the receiver itself
+     */
+    public T writeQueueDelayMillis(@IntRange(from = 0) long writeQueueDelayMillis) {
+        this.writeQueueDelayMillis = writeQueueDelayMillis;
+        return (T) this;
+    }
+
+    /**
+     * Opens an {@link IdentityMap} in each {@code transactionSync()}, so that models found by their row ids
+     * are shared in the transaction. The default is {@code false}.
+     *
+     * @param identityMapInTransaction {@code true} to use identity maps in transactions
+     * @return the receiver itself
+     */
+    public T identityMapInTransaction(boolean identityMapInTransaction) {
+        this.identityMapInTransaction = identityMapInTransaction;
+        return (T) this;
+    }
+
+    /**
+     * Starts the migration on a dedicated thread when the database is built. The default is {@code false},
+     * where the migration runs on the thread which accesses the database first.
+     *
+     * @param migrateInBackground {@code true} to start the migration in background
+     * @return the receiver itself
+     * @see OrmaConnection#startMigrationInBackground()
+     */
+    public T migrateInBackground(boolean migrateInBackground) {
+        this.migrateInBackground = migrateInBackground;
+        return (T) this;
+    }
+
     @NonNull
     protected abstract String getSchemaHash();
 
+    /**
+     * Called by {@code build()} with a fully constructed connection, which starts the migration in background
+     * if {@link #migrateInBackground(boolean)} is set. The thread is not started in the constructor of the connection,
+     * so that the migration never sees a connection whose subclass constructors have not run yet.
+     *
+     * @param connection A connection which has been constructed
+     * @return The connection itself
+     */
+    @NonNull
+    protected <C extends OrmaConnection> C onConnectionCreated(@NonNull C connection) {
+        if (migrateInBackground) {
+            connection.startMigrationInBackground();
+        }
+        return connection;
+    }
+
     protected T fillDefaults() {
         if (migrationTraceListener == null) {
             migrationTraceListener = trace ? TraceListener.LOGCAT : TraceListener.EMPTY;
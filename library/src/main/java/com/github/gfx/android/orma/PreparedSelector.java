@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma;
+
+import com.github.gfx.android.orma.exception.NoValueException;
+import com.github.gfx.android.orma.function.Consumer;
+
+import android.database.Cursor;
+import android.support.annotation.CheckResult;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents a {@code SELECT} query whose SQL is built only once by {@link Selector#prepare()}.
+ * Arguments given to the selector are the default values of the bind slots, which can be replaced by
+ * {@code bind*()} methods for each execution.
+ * Because the SQL string is always the same, SQLite's statement cache in the connection is hit.
+ * This class is not thread-safe.
+ */
+public class PreparedSelector<Model> {
+
+    final OrmaConnection conn;
+
+    final Selector<Model, ?> selector;
+
+    final String sql;
+
+    final Object[] defaultBindArgs;
+
+    final Object[] bindArgs;
+
+    public PreparedSelector(@NonNull Selector<Model, ?> selector, @NonNull String sql, @Nullable Object[] bindArgs) {
+        this.conn = selector.getConnection();
+        this.selector = selector.clone();
+        this.sql = sql;
+        this.defaultBindArgs = bindArgs != null ? bindArgs : new Object[0];
+        this.bindArgs = defaultBindArgs.clone();
+    }
+
+    @NonNull
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return The number of bind slots
+     */
+    public int getBindArgsCount() {
+        return bindArgs.length;
+    }
+
+    /**
+     * @param index The 1-based index of a bind slot, in the order of the arguments given to the selector
+     * @param value A value to bind
+     * @return the receiver itself
+     */
+    public PreparedSelector<Model> bindLong(@IntRange(from = 1) int index, long value) {
+        return bind(index, value);
+    }
+
+    /**
+     * @param index The 1-based index of a bind slot, in the order of the arguments given to the selector
+     * @param value A value to bind
+     * @return the receiver itself
+     */
+    public PreparedSelector<Model> bindDouble(@IntRange(from = 1) int index, double value) {
+        return bind(index, value);
+    }
+
+    /**
+     * @param index The 1-based index of a bind slot, in the order of the arguments given to the selector
+     * @param value A value to bind
+     * @return the receiver itself
+     */
+    public PreparedSelector<Model> bindBoolean(@IntRange(from = 1) int index, boolean value) {
+        return bind(index, value ? 1L : 0L);
+    }
+
+    /**
+     * @param index The 1-based index of a bind slot, in the order of the arguments given to the selector
+     * @param value A value to bind
+     * @return the receiver itself
+     */
+    public PreparedSelector<Model> bindString(@IntRange(from = 1) int index, @NonNull String value) {
+        return bind(index, value);
+    }
+
+    /**
+     * @param index The 1-based index of a bind slot, in the order of the arguments given to the selector
+     * @param value A value to bind
+     * @return the receiver itself
+     */
+    public PreparedSelector<Model> bindBlob(@IntRange(from = 1) int index, @NonNull byte[] value) {
+        return bind(index, value);
+    }
+
+    /**
+     * @param index The 1-based index of a bind slot, in the order of the arguments given to the selector
+     * @return the receiver itself
+     */
+    public PreparedSelector<Model> bindNull(@IntRange(from = 1) int index) {
+        return bind(index, null);
+    }
+
+    PreparedSelector<Model> bind(int index, @Nullable Object value) {
+        if (index < 1 || index > bindArgs.length) {
+            throw new IllegalArgumentException("Cannot bind argument at index " + index
+                    + " because the query has " + bindArgs.length + " parameters");
+        }
+        bindArgs[index - 1] = value;
+        return this;
+    }
+
+    /**
+     * Resets all the bind slots to the arguments given to the selector.
+     *
+     * @return the receiver itself
+     */
+    public PreparedSelector<Model> clearBindings() {
+        System.arraycopy(defaultBindArgs, 0, bindArgs, 0, bindArgs.length);
+        return this;
+    }
+
+    @CheckResult
+    @NonNull
+    public Cursor execute() {
+        return conn.rawQuery(sql, bindArgs);
+    }
+
+    @NonNull
+    public List<Model> toList() {
+        Cursor cursor = execute();
+        ArrayList<Model> list = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                list.add(selector.newModelFromCursor(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return list;
+    }
+
+    public void forEachRow(@NonNull Consumer<Model> action) {
+        Cursor cursor = execute();
+        try {
+            while (cursor.moveToNext()) {
+                action.accept(selector.newModelFromCursor(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return The first model of the result, or {@code null} if no rows are found
+     */
+    @Nullable
+    public Model valueOrNull() {
+        Cursor cursor = execute();
+        try {
+            return cursor.moveToFirst() ? selector.newModelFromCursor(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @NonNull
+    public Model value() throws NoValueException {
+        Model model = valueOrNull();
+        if (model == null) {
+            throw new NoValueException("Expected single get but nothing for " + selector.getSchema().getTableName());
+        }
+        return model;
+    }
+
+    @Override
+    public String toString() {
+        return sql + " " + Arrays.deepToString(bindArgs);
+    }
+}
@@ -17,6 +17,7 @@ package com.github.gfx.android.orma;
 
 import com.github.gfx.android.orma.annotation.OnConflict;
 import com.github.gfx.android.orma.annotation.PrimaryKey;
+import com.github.gfx.android.orma.function.Consumer;
 import com.github.gfx.android.orma.internal.OrmaConditionBase;
 
 import android.support.annotation.IntRange;
@@ -222,28 +223,91 @@ public abstract class Relation<Model, R extends Relation<Model, ?>> extends Orma
         return modelRef.value;
     }
 
+    /**
+     * Upserts models recursively in a transaction with prepared statements.
+     *
+     * @param models Models to upsert
+     * @return New models, which might have newly assigned primary keys and foreign keys
+     * @see #upsert(Object)
+     * @see Upserter
+     */
     @NonNull
     public List<Model> upsert(@NonNull final Iterable<Model> models) {
         final List<Model> result = new ArrayList<>();
+        upsert(models, result);
+        return result;
+    }
+
+    /**
+     * Upserts models recursively in a transaction with prepared statements, without reading them back.
+     * It is much faster than {@link #upsert(Iterable)} if the models are not needed.
+     *
+     * @param models Models to upsert
+     */
+    public void upsertWithoutReading(@NonNull final Iterable<Model> models) {
+        upsert(models, null);
+    }
+
+    void upsert(@NonNull final Iterable<Model> models, @Nullable final List<Model> result) {
         conn.transactionSync(new Runnable() {
             @Override
             public void run() {
-                for (Model model : models) {
-                    Model newModel = upsertWithoutTransaction(model);
-                    result.add(newModel);
+                Upserter<Model> upserter = new Upserter<>(Relation.this);
+                try {
+                    upserter.executeAll(models, result);
+                } finally {
+                    upserter.close();
                 }
             }
         });
-        return result;
+    }
+
+    /**
+     * Converts {@code model} to bind arguments for {@link Upserter}, in the order of {@link Schema#getColumns()}.
+     * The generated relation classes override it to upsert associated models recursively.
+     *
+     * @param upserter The upserter which upserts {@code model}, used to upsert associated models once
+     * @param model    A model to upsert
+     * @return Bind arguments where the last one is the primary key
+     */
+    @NonNull
+    protected Object[] convertToUpsertArgs(@NonNull Upserter<Model> upserter, @NonNull Model model) {
+        return getSchema().convertToArgs(conn, model, false);
     }
 
     @NonNull
     public abstract Model upsertWithoutTransaction(@NonNull final Model model);
 
+    /**
+     * @param action What to do with each model
+     * @see Selector#forEachRow(Consumer)
+     */
+    public void forEachRow(@NonNull Consumer<Model> action) {
+        selector().forEachRow(action);
+    }
+
+    /**
+     * @param reuse  A model instance to overwrite with each row, or {@code null} to create new models
+     * @param action What to do with each model
+     * @see Selector#forEachRow(Object, Consumer)
+     */
+    public void forEachRow(@Nullable Model reuse, @NonNull Consumer<Model> action) {
+        selector().forEachRow(reuse, action);
+    }
+
     // Iterator<Model>
 
     @Override
     public Iterator<Model> iterator() {
         return selector().iterator();
     }
+
+    /**
+     * @return An iterator with keyset pagination
+     * @see Selector#keysetIterator()
+     */
+    @NonNull
+    public Iterator<Model> keysetIterator() {
+        return selector().keysetIterator();
+    }
 }
@@ -88,6 +88,61 @@ public interface Schema<Model> extends MigrationSchema {
     void bindArgs(@NonNull OrmaConnection conn, @NonNull DatabaseStatement statement, @NonNull Model model,
             boolean withoutAutoId);
 
+    /**
+     * A variant of {@link #bindArgs(OrmaConnection, DatabaseStatement, Object, boolean)} for multi-row {@code INSERT}
+     * statements.
+     *
+     * @param conn          Used to retrieve instances that depends on a connection
+     * @param statement     What to bind columns
+     * @param model         The target model
+     * @param withoutAutoId If {@code true}, the primary key with {@link PrimaryKey#auto()} is omitted in the {@code INSERT}
+     *                      statement.
+     * @param offset        The number of arguments bound before the model, i.e. {@code row * numberOfColumns}
+     */
+    void bindArgs(@NonNull OrmaConnection conn, @NonNull DatabaseStatement statement, @NonNull Model model,
+            boolean withoutAutoId, int offset);
+
     @NonNull
     Model newModelFromCursor(@NonNull OrmaConnection conn, @NonNull Cursor cursor, int offset);
+
+    /**
+     * Overwrites the columns of {@code model} with the values of the current row of {@code cursor},
+     * so that a model instance can be recycled while reading a large number of rows.
+     *
+     * @param conn   Used to retrieve instances that depends on a connection
+     * @param model  The model to overwrite
+     * @param cursor The cursor pointing a row
+     * @param offset The column index of the model in the cursor
+     * @return {@code model} itself, or a new model if the model cannot be overwritten, e.g. it has a
+     * {@link com.github.gfx.android.orma.annotation.Setter} constructor.
+     */
+    @NonNull
+    Model readInto(@NonNull OrmaConnection conn, @NonNull Model model, @NonNull Cursor cursor, int offset);
+
+    /**
+     * Creates a partial model from a cursor with the result columns given by
+     * {@link Selector#select(ColumnDef[])}. The columns not in {@code columns} are left as the default values.
+     *
+     * @param conn    Used to retrieve instances that depends on a connection
+     * @param cursor  The cursor pointing a row
+     * @param columns The columns in the cursor, each of which is followed by the columns of its direct association
+     * @return A new model
+     */
+    @NonNull
+    Model newModelFromCursor(@NonNull OrmaConnection conn, @NonNull Cursor cursor,
+            @NonNull List<ColumnDef<Model, ?>> columns);
+
+    /**
+     * A variant of {@link #readInto(OrmaConnection, Object, Cursor, int)} for partial models.
+     *
+     * @param conn    Used to retrieve instances that depends on a connection
+     * @param model   The model to overwrite
+     * @param cursor  The cursor pointing a row
+     * @param columns The columns in the cursor, each of which is followed by the columns of its direct association
+     * @return {@code model} itself, or a new model if the model cannot be overwritten
+     * @see #newModelFromCursor(OrmaConnection, Cursor, List)
+     */
+    @NonNull
+    Model readInto(@NonNull OrmaConnection conn, @NonNull Model model, @NonNull Cursor cursor,
+            @NonNull List<ColumnDef<Model, ?>> columns);
 }
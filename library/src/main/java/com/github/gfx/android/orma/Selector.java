@@ -18,8 +18,11 @@ package com.github.gfx.android.orma;
 
 import com.github.gfx.android.orma.exception.InvalidStatementException;
 import com.github.gfx.android.orma.exception.NoValueException;
+import com.github.gfx.android.orma.function.Consumer;
 import com.github.gfx.android.orma.internal.OrmaConditionBase;
 import com.github.gfx.android.orma.internal.OrmaIterator;
+import com.github.gfx.android.orma.internal.OrmaKeysetIterator;
+import com.github.gfx.android.orma.internal.PrefetchingIterator;
 
 import android.annotation.SuppressLint;
 import android.database.Cursor;
@@ -31,6 +34,7 @@ import android.support.annotation.Nullable;
 import android.support.annotation.RestrictTo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -49,6 +53,24 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
     @Nullable
     protected String orderBy;
 
+    /**
+     * The ordering terms as {@link OrderSpec}, or {@code null} if any raw ordering term is given.
+     */
+    @Nullable
+    protected ArrayList<OrderSpec<Model>> orderSpecs = new ArrayList<>();
+
+    /**
+     * The columns given by {@link #select(ColumnDef[])}, or {@code null} to select all the columns.
+     */
+    @Nullable
+    protected List<ColumnDef<Model, ?>> projection;
+
+    /**
+     * The associations given by {@link #prefetch(ColumnDef)}.
+     */
+    @Nullable
+    protected List<ColumnDef<Model, ? extends SingleAssociation<?>>> prefetches;
+
     protected long limit = -1;
 
     protected long offset = -1;
@@ -62,6 +84,7 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
     public Selector(@NonNull Relation<Model, ?> relation) {
         super(relation);
         orderBy = relation.buildOrderingTerms();
+        orderSpecs.addAll(relation.orderSpecs);
     }
 
     public Selector(@NonNull Selector<Model, ?> selector) {
@@ -69,6 +92,9 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
         groupBy = selector.groupBy;
         having = selector.having;
         orderBy = selector.orderBy;
+        orderSpecs = selector.orderSpecs != null ? new ArrayList<>(selector.orderSpecs) : null;
+        projection = selector.projection;
+        prefetches = selector.prefetches != null ? new ArrayList<>(selector.prefetches) : null;
         limit = selector.limit;
         offset = selector.offset;
         page = selector.page;
@@ -83,6 +109,78 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
         return column.getQualifiedName();
     }
 
+    /**
+     * Narrows the result columns to {@code columns}, so that the models are partially filled.
+     * The other columns are left as the default values of the model class.
+     * A direct association column also selects the columns of the associated model.
+     * The {@code LEFT OUTER JOIN} of a direct association is omitted if the query uses none of its columns.
+     *
+     * @param columns Columns to select, or nothing to select all the columns
+     * @return the receiver itself
+     */
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    public final S select(@NonNull ColumnDef<Model, ?>... columns) {
+        projection = columns.length != 0 ? Arrays.asList(columns.clone()) : null;
+        return (S) this;
+    }
+
+    /**
+     * Loads the models of a {@link SingleAssociation} column in bulk, so that {@link SingleAssociation#get()} does
+     * not run a query for each row. The associated models are loaded by a query for each page of
+     * {@link #toList()}, {@link #iterator()}, {@link #keysetIterator()} and {@link #forEachRow(Consumer)}.
+     *
+     * @param column A {@link SingleAssociation} column of the model
+     * @return the receiver itself
+     * @see SingleAssociation#prefetch(OrmaConnection, java.util.Collection)
+     */
+    @SuppressWarnings("unchecked")
+    public S prefetch(@NonNull ColumnDef<Model, ? extends SingleAssociation<?>> column) {
+        if (prefetches == null) {
+            prefetches = new ArrayList<>();
+        }
+        prefetches.add(column);
+        return (S) this;
+    }
+
+    /**
+     * Loads the associations given by {@link #prefetch(ColumnDef)} for {@code models}.
+     *
+     * @param models Models created by the selector
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public void prefetchAssociations(@NonNull List<Model> models) {
+        if (prefetches == null || models.isEmpty()) {
+            return;
+        }
+        for (ColumnDef<Model, ? extends SingleAssociation<?>> column : prefetches) {
+            List<SingleAssociation<?>> associations = new ArrayList<>(models.size());
+            for (Model model : models) {
+                associations.add(column.get(model));
+            }
+            SingleAssociation.prefetch(conn, associations);
+        }
+    }
+
+    /**
+     * @return Escaped result columns for {@code SELECT}, given by {@link #select(ColumnDef[])} if any
+     */
+    @NonNull
+    public String[] getResultColumns() {
+        if (projection == null) {
+            return getSchema().getDefaultResultColumns();
+        }
+
+        List<String> columns = new ArrayList<>();
+        for (ColumnDef<Model, ?> column : projection) {
+            columns.add(column.getQualifiedName());
+            if (column instanceof AssociationDef) {
+                columns.addAll(Arrays.asList(((AssociationDef<?, ?, ?>) column).associationSchema.getDefaultResultColumns()));
+            }
+        }
+        return columns.toArray(new String[columns.size()]);
+    }
+
     @SuppressWarnings("unchecked")
     public S groupBy(@NonNull String groupBy) {
         this.groupBy = groupBy;
@@ -98,17 +196,26 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
 
     @SuppressWarnings("unchecked")
     public S orderBy(@NonNull CharSequence orderByTerm) {
-        if (orderBy == null) {
-            orderBy = orderByTerm.toString();
-        } else {
-            orderBy += ", " + orderByTerm;
-        }
+        orderSpecs = null;
+        appendOrderingTerm(orderByTerm);
         return (S) this;
     }
 
     @SuppressWarnings("unchecked")
     public S orderBy(@NonNull OrderSpec<Model> orderSpec) {
-        return orderBy(orderSpec.toString());
+        if (orderSpecs != null) {
+            orderSpecs.add(orderSpec);
+        }
+        appendOrderingTerm(orderSpec.toString());
+        return (S) this;
+    }
+
+    private void appendOrderingTerm(@NonNull CharSequence orderByTerm) {
+        if (orderBy == null) {
+            orderBy = orderByTerm.toString();
+        } else {
+            orderBy += ", " + orderByTerm;
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -167,6 +274,19 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
         return (S) this;
     }
 
+    /**
+     * @return The ordering terms given by {@code orderBy(OrderSpec)} followed by the primary key, which make the order
+     * total, or {@code null} if there are ordering terms given as strings, {@code groupBy()} or {@code having()}
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    @Nullable
+    public List<OrderSpec<Model>> getKeys() {
+        if (groupBy != null || having != null || orderSpecs == null) {
+            return null;
+        }
+        return OrmaKeysetIterator.buildKeys(getSchema(), orderSpecs);
+    }
+
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     public boolean hasLimit() {
         return limit != -1;
@@ -196,8 +316,10 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
 
     @IntRange(from = 0)
     public int count() {
+        String whereClause = getWhereClause();
         String sql = SQLiteQueryBuilder.buildQueryString(
-                false, getSchema().getSelectFromTableClause(), countSelections, getWhereClause(), groupBy, null, null, null);
+                false, buildSelectFromTableClause(countSelections, whereClause), countSelections, whereClause, groupBy,
+                null, null, null);
         return (int) conn.rawQueryForLong(sql, getBindArgs());
     }
 
@@ -221,8 +343,21 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
 
     @Nullable
     public Model getOrNull(@IntRange(from = 0) long position) {
-        return conn.querySingle(getSchema(), getSchema().getDefaultResultColumns(),
-                getWhereClause(), getBindArgs(), groupBy, having, orderBy, position + Math.max(offset, 0));
+        if (projection == null) {
+            return conn.querySingle(getSchema(), getSchema().getDefaultResultColumns(),
+                    getWhereClause(), getBindArgs(), groupBy, having, orderBy, position + Math.max(offset, 0));
+        }
+
+        String[] columns = getResultColumns();
+        String whereClause = getWhereClause();
+        String sql = SQLiteQueryBuilder.buildQueryString(false, buildSelectFromTableClause(columns, whereClause),
+                columns, whereClause, groupBy, having, orderBy, (position + Math.max(offset, 0)) + ",1");
+        Cursor cursor = conn.rawQuery(sql, getBindArgs());
+        try {
+            return cursor.moveToFirst() ? newModelFromCursor(cursor) : null;
+        } finally {
+            cursor.close();
+        }
     }
 
     @NonNull
@@ -267,7 +402,7 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
      */
     @NonNull
     public String buildQuery() {
-        return buildQueryWithColumns(getSchema().getDefaultResultColumns());
+        return buildQueryWithColumns(getResultColumns());
     }
 
     /**
@@ -276,9 +411,89 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
      */
     @NonNull
     public String buildQueryWithColumns(@NonNull String... columns) {
+        String whereClause = getWhereClause();
         return SQLiteQueryBuilder.buildQueryString(
-                false, getSchema().getSelectFromTableClause(), columns,
-                getWhereClause(), groupBy, having, orderBy, getLimitClause());
+                false, buildSelectFromTableClause(columns, whereClause), columns,
+                whereClause, groupBy, having, orderBy, getLimitClause());
+    }
+
+    /**
+     * Builds the {@code FROM} clause without the {@code LEFT OUTER JOIN}s of the direct associations that the query
+     * does not use, because old SQLite versions run the joins even if nothing refers to the joined tables.
+     *
+     * @param columns     Result columns of the query
+     * @param whereClause The {@code WHERE} clause of the query
+     * @return The {@code FROM} clause
+     */
+    @NonNull
+    String buildSelectFromTableClause(@NonNull String[] columns, @Nullable String whereClause) {
+        StringBuilder sql = new StringBuilder();
+        for (String column : columns) {
+            sql.append(column).append(' ');
+        }
+        sql.append(whereClause).append(' ').append(groupBy).append(' ').append(having).append(' ').append(orderBy);
+        String referencingSql = sql.toString();
+
+        Schema<Model> schema = getSchema();
+        StringBuilder clause = new StringBuilder(schema.getEscapedTableName());
+        String tableAlias = schema.getEscapedTableAlias();
+        if (tableAlias != null) {
+            clause.append(" AS ").append(tableAlias);
+        }
+        if (!appendJoins(clause, schema, referencingSql)) {
+            return schema.getSelectFromTableClause(); // all the joins are used
+        }
+        return clause.toString();
+    }
+
+    /**
+     * @return {@code true} if any join is omitted
+     */
+    private static boolean appendJoins(StringBuilder clause, Schema<?> schema, String referencingSql) {
+        boolean omitted = false;
+        for (ColumnDef<?, ?> column : schema.getColumns()) {
+            if (column instanceof AssociationDef) {
+                Schema<?> associationSchema = ((AssociationDef<?, ?, ?>) column).associationSchema;
+                if (isReferenced(associationSchema, referencingSql)) {
+                    clause.append(" LEFT OUTER JOIN ")
+                            .append(associationSchema.getEscapedTableName())
+                            .append(" AS ")
+                            .append(associationSchema.getEscapedTableAlias())
+                            .append(" ON ")
+                            .append(column.getQualifiedName())
+                            .append(" = ")
+                            .append(associationSchema.getPrimaryKey().getQualifiedName());
+                    omitted |= appendJoins(clause, associationSchema, referencingSql);
+                } else {
+                    omitted = true;
+                }
+            }
+        }
+        return omitted;
+    }
+
+    private static boolean isReferenced(Schema<?> associationSchema, String referencingSql) {
+        if (referencingSql.contains(associationSchema.getEscapedTableAlias())) {
+            return true;
+        }
+        for (ColumnDef<?, ?> column : associationSchema.getColumns()) {
+            if (column instanceof AssociationDef
+                    && isReferenced(((AssociationDef<?, ?, ?>) column).associationSchema, referencingSql)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the query only once to execute it repeatedly with different arguments.
+     * Use {@link #limit(long)} on the selector if only the first row is needed.
+     *
+     * @return A prepared query which has the SQL and the arguments of the selector
+     */
+    @NonNull
+    public PreparedSelector<Model> prepare() {
+        return new PreparedSelector<>(this, buildQuery(), getBindArgs());
     }
 
     /**
@@ -298,14 +513,81 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
         } finally {
             cursor.close();
         }
+        prefetchAssociations(list);
         return list;
     }
 
+    /**
+     * Executes a query and passes each model to {@code action}, without building a list.
+     * Rows are read page by page as {@link #keysetIterator()} does if the selector allows it.
+     *
+     * @param action What to do with each model
+     */
+    public void forEachRow(@NonNull Consumer<Model> action) {
+        forEachRow(null, action);
+    }
+
+    /**
+     * A variant of {@link #forEachRow(Consumer)} which recycles a model instance.
+     * {@code action} must not retain the given model, because it is overwritten by the next row.
+     *
+     * The instance is not recycled with {@link #prefetch(ColumnDef)}, because associations are loaded page by page.
+     *
+     * @param reuse  A model instance to overwrite with each row, or {@code null} to create new models
+     * @param action What to do with each model
+     * @see Schema#readInto(OrmaConnection, Object, Cursor, int)
+     */
+    public void forEachRow(@Nullable Model reuse, @NonNull Consumer<Model> action) {
+        if (prefetches != null) {
+            Iterator<Model> iterator = groupBy == null && having == null && orderSpecs != null
+                    ? keysetIterator() : iterator();
+            while (iterator.hasNext()) {
+                action.accept(iterator.next());
+            }
+            return;
+        }
+
+        if (groupBy == null && having == null && orderSpecs != null) {
+            Iterator<Model> iterator = new OrmaKeysetIterator<>(this, orderSpecs, reuse);
+            while (iterator.hasNext()) {
+                action.accept(iterator.next());
+            }
+            return;
+        }
+
+        Cursor cursor = execute();
+        try {
+            while (cursor.moveToNext()) {
+                action.accept(reuse != null ? readInto(reuse, cursor) : newModelFromCursor(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
     @NonNull
     public Model newModelFromCursor(@NonNull Cursor cursor) {
+        if (projection != null) {
+            return getSchema().newModelFromCursor(conn, cursor, projection);
+        }
         return getSchema().newModelFromCursor(conn, cursor, 0);
     }
 
+    /**
+     * Overwrites {@code model} with the current row of {@code cursor}, which is a result of the selector.
+     *
+     * @param model  A model to overwrite
+     * @param cursor A cursor pointing a row
+     * @return {@code model} itself, or a new model if the model cannot be overwritten
+     */
+    @NonNull
+    public Model readInto(@NonNull Model model, @NonNull Cursor cursor) {
+        if (projection != null) {
+            return getSchema().readInto(conn, model, cursor, projection);
+        }
+        return getSchema().readInto(conn, model, cursor, 0);
+    }
+
     // implements Iterable<Model>
 
     /**
@@ -314,6 +596,31 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
     @NonNull
     @Override
     public Iterator<Model> iterator() {
-        return new OrmaIterator<>(this);
+        Iterator<Model> iterator = new OrmaIterator<>(this);
+        return prefetches != null ? new PrefetchingIterator<>(this, iterator) : iterator;
+    }
+
+    /**
+     * Creates an iterator that reads rows page by page with keyset (a.k.a. seek) pagination,
+     * i.e. each page starts right after the last row of the previous page in the order of {@code orderBy*()}
+     * and the primary key, instead of {@code OFFSET}.
+     * Unlike {@link #iterator()}, it does not run {@code COUNT(*)} and its cost does not depend on
+     * how far the iteration goes, which is suitable to scan large tables.
+     * Rows inserted during the iteration might be returned if they come after the current position.
+     *
+     * @return An iterator which seeks with the ordering terms and the primary key
+     * @throws InvalidStatementException if the selector has {@code groupBy()}, {@code having()},
+     *                                   or ordering terms not given as {@link OrderSpec}
+     */
+    @NonNull
+    public Iterator<Model> keysetIterator() {
+        if (groupBy != null || having != null) {
+            throw new InvalidStatementException("keysetIterator() does not support groupBy() nor having()");
+        }
+        if (orderSpecs == null) {
+            throw new InvalidStatementException("keysetIterator() requires ordering terms given by orderBy(OrderSpec)");
+        }
+        Iterator<Model> iterator = new OrmaKeysetIterator<>(this, orderSpecs);
+        return prefetches != null ? new PrefetchingIterator<>(this, iterator) : iterator;
     }
 }
@@ -22,11 +22,21 @@ import com.github.gfx.android.orma.exception.NoValueException;
 import com.github.gfx.android.orma.gson.SingleAssociationTypeAdapterFactory;
 import com.github.gfx.android.orma.internal.Schemas;
 
+import android.database.Cursor;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.RestrictTo;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Lazy has-one association. The {@code Model} is assumed to have a primary key with the `long` type.
  * This is typically created from factory methods.
@@ -40,11 +50,18 @@ public class SingleAssociation<Model> implements Parcelable {
 
     final protected ModelFactory<Model> factory;
 
+    /**
+     * The schema to load the model from, or {@code null} if the association is not created from a cursor.
+     */
+    @Nullable
+    final Schema<Model> schema;
+
     Model value = null;
 
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     public SingleAssociation(long id, @NonNull final Model model) {
         this.id = id;
+        this.schema = null;
         this.factory = new ModelFactory<Model>() {
             @NonNull
             @Override
@@ -57,12 +74,14 @@ public class SingleAssociation<Model> implements Parcelable {
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     public SingleAssociation(long id, @NonNull ModelFactory<Model> factory) {
         this.id = id;
+        this.schema = null;
         this.factory = factory;
     }
 
     // may be called from *_Schema
     public SingleAssociation(@NonNull final OrmaConnection conn, @NonNull final Schema<Model> schema, final long id) {
         this.id = id;
+        this.schema = schema;
         this.factory = new ModelFactory<Model>() {
             @NonNull
             @Override
@@ -145,6 +164,100 @@ public class SingleAssociation<Model> implements Parcelable {
         return get();
     }
 
+    /**
+     * Loads the models of {@code associations} with {@code WHERE _rowid_ IN (...)} queries, one for each
+     * associated table and each chunk of ids, instead of a query for each {@link #get()}.
+     * Associations which already have their models or are not created from cursors are skipped,
+     * and missing models are left to {@link #get()}, which throws {@link NoValueException}.
+     *
+     * @param conn         A connection to load models
+     * @param associations Associations to load, which may refer to the same ids
+     */
+    @SuppressWarnings("unchecked")
+    public static void prefetch(@NonNull OrmaConnection conn,
+            @NonNull Collection<? extends SingleAssociation<?>> associations) {
+        Map<Schema<?>, Map<Long, List<SingleAssociation<Object>>>> idsForSchemas = new LinkedHashMap<>();
+        for (SingleAssociation<?> association : associations) {
+            if (association == null || association.schema == null || association.value != null) {
+                continue;
+            }
+            Map<Long, List<SingleAssociation<Object>>> ids = idsForSchemas.get(association.schema);
+            if (ids == null) {
+                ids = new LinkedHashMap<>();
+                idsForSchemas.put(association.schema, ids);
+            }
+            List<SingleAssociation<Object>> list = ids.get(association.id);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                ids.put(association.id, list);
+            }
+            list.add((SingleAssociation<Object>) association);
+        }
+
+        for (Map.Entry<Schema<?>, Map<Long, List<SingleAssociation<Object>>>> entry : idsForSchemas.entrySet()) {
+            prefetch(conn, (Schema<Object>) entry.getKey(), entry.getValue());
+        }
+    }
+
+    static void prefetch(OrmaConnection conn, Schema<Object> schema,
+            Map<Long, List<SingleAssociation<Object>>> associationsForIds) {
+        IdentityMap identityMap = conn.getIdentityMap();
+        if (identityMap != null) {
+            Iterator<Map.Entry<Long, List<SingleAssociation<Object>>>> iterator = associationsForIds.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, List<SingleAssociation<Object>>> entry = iterator.next();
+                Object model = identityMap.get(schema, entry.getKey());
+                if (model != null) {
+                    for (SingleAssociation<Object> association : entry.getValue()) {
+                        association.setIfAbsent(model);
+                    }
+                    iterator.remove();
+                }
+            }
+        }
+
+        String tableAlias = schema.getEscapedTableAlias();
+        String rowId = (tableAlias == null ? "" : tableAlias + ".") + "`_rowid_`";
+
+        // the last column is the rowid to find associations
+        String[] resultColumns = schema.getDefaultResultColumns();
+        String[] columns = Arrays.copyOf(resultColumns, resultColumns.length + 1);
+        columns[resultColumns.length] = rowId;
+
+        List<Long> ids = new ArrayList<>(associationsForIds.keySet());
+        for (int start = 0; start < ids.size(); start += Inserter.MAX_BIND_ARGS) {
+            List<Long> chunk = ids.subList(start, Math.min(ids.size(), start + Inserter.MAX_BIND_ARGS));
+
+            StringBuilder whereClause = new StringBuilder(rowId).append(" IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                whereClause.append(i == 0 ? "?" : ",?");
+            }
+            whereClause.append(')');
+
+            Cursor cursor = conn.query(schema, columns, whereClause.toString(), chunk.toArray(), null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    Object model = schema.newModelFromCursor(conn, cursor, 0);
+                    long id = cursor.getLong(resultColumns.length);
+                    if (identityMap != null) {
+                        identityMap.put(schema, id, model);
+                    }
+                    for (SingleAssociation<Object> association : associationsForIds.get(id)) {
+                        association.setIfAbsent(model);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    synchronized void setIfAbsent(@NonNull Model model) {
+        if (value == null) {
+            value = model;
+        }
+    }
+
     @Override
     public String toString() {
         return "SingleAssociation{" +
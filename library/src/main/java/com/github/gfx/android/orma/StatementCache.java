@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma;
+
+import com.github.gfx.android.orma.core.Database;
+import com.github.gfx.android.orma.core.DatabaseStatement;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+/**
+ * A bounded LRU cache of compiled statements keyed by SQL, owned by {@link OrmaConnection}.
+ * A statement is taken out of the cache while it is used, so that a statement is never shared by threads.
+ */
+public class StatementCache {
+
+    @Nullable
+    final LruCache<String, DatabaseStatement> cache;
+
+    long hitCount = 0;
+
+    long missCount = 0;
+
+    boolean closed = false;
+
+    /**
+     * @param maxSize The max number of statements to keep. {@code 0} to disable caching.
+     */
+    public StatementCache(int maxSize) {
+        if (maxSize > 0) {
+            cache = new LruCache<String, DatabaseStatement>(maxSize) {
+                @Override
+                protected void entryRemoved(boolean evicted, String key, DatabaseStatement oldValue,
+                        DatabaseStatement newValue) {
+                    // remove() in acquire() also calls this method, but it must not close the statement
+                    if (evicted || (newValue != null && newValue != oldValue)) {
+                        oldValue.close();
+                    }
+                }
+            };
+        } else {
+            cache = null;
+        }
+    }
+
+    /**
+     * Takes a statement for {@code sql} out of the cache, or compiles it if missing.
+     * The statement must be given back by {@link #release(String, DatabaseStatement)}.
+     *
+     * @param db  The database to compile {@code sql}
+     * @param sql An SQL statement
+     * @return A compiled statement
+     */
+    @NonNull
+    public DatabaseStatement acquire(@NonNull Database db, @NonNull String sql) {
+        DatabaseStatement statement = null;
+        synchronized (this) {
+            if (cache != null) {
+                statement = cache.remove(sql);
+            }
+            if (statement != null) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+        }
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+        }
+        return statement;
+    }
+
+    /**
+     * Gives {@code statement} back to the cache. It is closed immediately if the cache is disabled or closed.
+     *
+     * @param sql       An SQL statement which {@code statement} is compiled from
+     * @param statement A statement returned by {@link #acquire(Database, String)}
+     */
+    public void release(@NonNull String sql, @NonNull DatabaseStatement statement) {
+        statement.clearBindings();
+        synchronized (this) {
+            if (cache != null && !closed) {
+                cache.put(sql, statement);
+                return;
+            }
+        }
+        statement.close();
+    }
+
+    /**
+     * Closes and removes all the cached statements.
+     */
+    public synchronized void evictAll() {
+        if (cache != null) {
+            cache.evictAll();
+        }
+    }
+
+    /**
+     * Closes all the cached statements, and statements released after this call are closed instead of cached.
+     */
+    public synchronized void close() {
+        closed = true;
+        evictAll();
+    }
+
+    public synchronized int size() {
+        return cache != null ? cache.size() : 0;
+    }
+
+    public synchronized int maxSize() {
+        return cache != null ? cache.maxSize() : 0;
+    }
+
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "StatementCache{size=" + size() + ", maxSize=" + maxSize()
+                + ", hitCount=" + hitCount + ", missCount=" + missCount + "}";
+    }
+}
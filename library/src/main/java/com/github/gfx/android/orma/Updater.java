@@ -18,7 +18,10 @@ package com.github.gfx.android.orma;
 import com.github.gfx.android.orma.internal.OrmaConditionBase;
 
 import android.content.ContentValues;
+import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 
 public abstract class Updater<Model, U extends Updater<Model, ?>> extends OrmaConditionBase<Model, U>
         implements Cloneable {
@@ -63,4 +66,30 @@ public abstract class Updater<Model, U extends Updater<Model, ?>> extends OrmaCo
     public int execute() {
         return conn.update(getSchema(), contents, getWhereClause(), getBindArgs());
     }
+
+    /**
+     * Updates rows in chunks, each of which is committed in its own transaction, in order not to block other writers
+     * for long. Note that the whole operation is not atomic. It must not be called in a transaction.
+     *
+     * @param chunkSize The max number of rows updated in a chunk
+     * @param listener  Called after each chunk is committed, which can cancel the remaining chunks
+     * @return The number of rows updated.
+     */
+    @WorkerThread
+    public int executeInChunks(@IntRange(from = 1) int chunkSize, @Nullable ChunkListener listener) {
+        return new ChunkedExecutor(conn, getSchema(), getWhereClause(), getBindArgs(), chunkSize, listener) {
+            @Override
+            int executeChunk(@NonNull String whereClause, @NonNull Object[] whereArgs) {
+                return conn.update(schema, contents, whereClause, whereArgs);
+            }
+        }.execute();
+    }
+
+    /**
+     * @see #executeInChunks(int, ChunkListener)
+     */
+    @WorkerThread
+    public int executeInChunks(@IntRange(from = 1) int chunkSize) {
+        return executeInChunks(chunkSize, null);
+    }
 }
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma;
+
+import com.github.gfx.android.orma.annotation.OnConflict;
+import com.github.gfx.android.orma.core.Database;
+import com.github.gfx.android.orma.core.DatabaseStatement;
+import com.github.gfx.android.orma.event.DataSetChangedEvent;
+import com.github.gfx.android.orma.exception.NoValueException;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents prepared statements to upsert models, which binds models directly instead of {@code ContentValues}.
+ * <p>
+ * If the primary key is not {@link com.github.gfx.android.orma.annotation.PrimaryKey#auto()} and SQLite is 3.24.0 or
+ * later, it uses {@code INSERT ... ON CONFLICT DO UPDATE}. Otherwise it uses {@code UPDATE} followed by {@code INSERT} if
+ * no row is updated, where a model with an auto-generated primary key is inserted with a new primary key.
+ * </p>
+ * <p>
+ * Associated models are upserted by the upserters for their tables, which are shared with all the models upserted by
+ * this upserter. Each associated model is upserted only once, memoized by its identity and its primary key;
+ * that is, the first model wins if distinct models have the same primary key.
+ * </p>
+ * Data set changed events are fired by {@link #close()}, not for each row.
+ */
+public class Upserter<Model> implements Closeable {
+
+    final OrmaConnection conn;
+
+    final Relation<Model, ?> relation;
+
+    final Schema<Model> schema;
+
+    final ColumnDef<Model, ?> primaryKey;
+
+    final boolean autoId;
+
+    final boolean nativeUpsert;
+
+    final String insertSql;
+
+    final String updateOrUpsertSql;
+
+    @Nullable
+    DatabaseStatement insertStatement;
+
+    @Nullable
+    DatabaseStatement updateOrUpsertStatement;
+
+    int insertedCount = 0;
+
+    int updatedCount = 0;
+
+    /**
+     * Upserters for associated tables, shared by the root upserter and its descendants.
+     */
+    final Map<Schema<?>, Upserter<?>> associationUpserters;
+
+    final boolean root;
+
+    final Map<Model, Model> upsertedModels = new IdentityHashMap<>();
+
+    final Map<Object, Model> upsertedModelsByPrimaryKey = new HashMap<>();
+
+    public Upserter(@NonNull Relation<Model, ?> relation) {
+        this(relation, new LinkedHashMap<Schema<?>, Upserter<?>>(), true);
+    }
+
+    Upserter(@NonNull Relation<Model, ?> relation, @NonNull Map<Schema<?>, Upserter<?>> associationUpserters,
+            boolean root) {
+        this.associationUpserters = associationUpserters;
+        this.root = root;
+        this.conn = relation.getConnection();
+        this.relation = relation;
+        this.schema = relation.getSchema();
+        this.primaryKey = schema.getPrimaryKey();
+        if (!primaryKey.isPrimaryKey()) {
+            throw new UnsupportedOperationException("upsert is not supported because of missing @PrimaryKey");
+        }
+        this.autoId = primaryKey.isAutoValue();
+        this.nativeUpsert = !autoId && conn.isSqliteVersionAtLeast(3, 24);
+
+        insertSql = schema.getInsertStatement(OnConflict.NONE, autoId);
+        updateOrUpsertSql = nativeUpsert ? buildUpsertStatement() : buildUpdateStatement();
+    }
+
+    /**
+     * @return {@code UPDATE table SET column = ?, ... WHERE primaryKey = ?} where the primary key is the last column
+     */
+    @NonNull
+    String buildUpdateStatement() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("UPDATE ");
+        sb.append(schema.getEscapedTableName());
+        sb.append(" SET ");
+        boolean first = true;
+        for (ColumnDef<Model, ?> column : schema.getColumns()) {
+            if (column.isPrimaryKey()) {
+                continue;
+            }
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append(column.getEscapedName());
+            sb.append("=?");
+        }
+        if (first) {
+            // no column to update but the primary key
+            sb.append(primaryKey.getEscapedName());
+            sb.append('=');
+            sb.append(primaryKey.getEscapedName());
+        }
+        sb.append(" WHERE ");
+        sb.append(primaryKey.getEscapedName());
+        sb.append("=?");
+        return sb.toString();
+    }
+
+    /**
+     * @return {@code INSERT INTO table (...) VALUES (...) ON CONFLICT (primaryKey) DO UPDATE SET column = excluded.column, ...}
+     */
+    @NonNull
+    String buildUpsertStatement() {
+        StringBuilder sb = new StringBuilder(schema.getInsertStatement(OnConflict.NONE, false));
+        sb.append(" ON CONFLICT (");
+        sb.append(primaryKey.getEscapedName());
+        sb.append(')');
+        boolean first = true;
+        for (ColumnDef<Model, ?> column : schema.getColumns()) {
+            if (column.isPrimaryKey()) {
+                continue;
+            }
+            sb.append(first ? " DO UPDATE SET " : ",");
+            first = false;
+            sb.append(column.getEscapedName());
+            sb.append("=excluded.");
+            sb.append(column.getEscapedName());
+        }
+        if (first) {
+            sb.append(" DO NOTHING");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Upserts {@code model} without reading it back, which is faster than {@link #executeAndRead(Object)}.
+     * Note that the associated models are upserted recursively.
+     *
+     * @param model A model to upsert
+     * @return The row id if a row is inserted, or {@code -1} if a row is updated
+     */
+    public long execute(@NonNull Model model) {
+        Object[] args = relation.convertToUpsertArgs(this, model);
+        Object primaryKeyValue = args[args.length - 1];
+
+        if (nativeUpsert) {
+            updatedCount += executeUpdateOrUpsert(args);
+            return -1;
+        }
+
+        if (!(autoId && isZero(primaryKeyValue)) && executeUpdateOrUpsert(args) != 0) {
+            updatedCount++;
+            return -1;
+        }
+
+        Object[] insertArgs = autoId ? Arrays.copyOf(args, args.length - 1) : args;
+        if (insertStatement == null) {
+            insertStatement = conn.statementCache.acquire(getDatabase(), insertSql);
+        }
+        conn.trace(insertSql, insertArgs);
+        OrmaConnection.bindAllArgs(insertStatement, insertArgs);
+        long rowId = insertStatement.executeInsert();
+        insertedCount++;
+        return rowId;
+    }
+
+    int executeUpdateOrUpsert(Object[] args) {
+        if (updateOrUpsertStatement == null) {
+            updateOrUpsertStatement = conn.statementCache.acquire(getDatabase(), updateOrUpsertSql);
+        }
+        conn.trace(updateOrUpsertSql, args);
+        OrmaConnection.bindAllArgs(updateOrUpsertStatement, args);
+        return updateOrUpsertStatement.executeUpdateDelete();
+    }
+
+    /**
+     * Upserts {@code model} and then reads the row back.
+     *
+     * @param model A model to upsert
+     * @return A new model which has the assigned primary key and foreign keys
+     */
+    @NonNull
+    public Model executeAndRead(@NonNull Model model) {
+        long rowId = execute(model);
+        if (rowId != -1) {
+            return conn.findByRowId(schema, rowId);
+        }
+
+        Object primaryKeyValue = primaryKey.getSerialized(model);
+        Model newModel = conn.querySingle(schema, schema.getDefaultResultColumns(),
+                primaryKey.getQualifiedName() + " = ?", new Object[]{primaryKeyValue}, null, null, null, 0);
+        if (newModel == null) {
+            throw new NoValueException("Can't retrieve the upserted model for " + primaryKey.name + "="
+                    + primaryKeyValue + " in " + schema.getModelClass().getCanonicalName());
+        }
+        return newModel;
+    }
+
+    /**
+     * @param models Models to upsert
+     * @param result A list to add the upserted models to, or {@code null} not to read them back
+     */
+    public void executeAll(@NonNull Iterable<Model> models, @Nullable List<Model> result) {
+        for (Model model : models) {
+            if (result != null) {
+                result.add(executeAndRead(model));
+            } else {
+                execute(model);
+            }
+        }
+    }
+
+    /**
+     * @param schema The schema of an associated table
+     * @return The upserter for the table, or {@code null} if not yet added
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    public <T> Upserter<T> getAssociationUpserter(@NonNull Schema<T> schema) {
+        return (Upserter<T>) associationUpserters.get(schema);
+    }
+
+    /**
+     * @param relation A relation of an associated table
+     * @return A new upserter for the table, which is closed by {@link #close()} of the root upserter
+     */
+    @NonNull
+    public <T> Upserter<T> addAssociationUpserter(@NonNull Relation<T, ?> relation) {
+        Upserter<T> upserter = new Upserter<>(relation, associationUpserters, false);
+        associationUpserters.put(relation.getSchema(), upserter);
+        return upserter;
+    }
+
+    /**
+     * Upserts an associated model unless it or another model with the same primary key has been upserted.
+     *
+     * @param model An associated model
+     * @return The upserted model
+     */
+    @NonNull
+    public Model upsertOnce(@NonNull Model model) {
+        Model upsertedModel = upsertedModels.get(model);
+        if (upsertedModel != null) {
+            return upsertedModel;
+        }
+
+        Object primaryKeyValue = primaryKey.getSerialized(model);
+        if (!(autoId && isZero(primaryKeyValue))) {
+            upsertedModel = upsertedModelsByPrimaryKey.get(primaryKeyValue);
+        }
+        if (upsertedModel == null) {
+            upsertedModel = executeAndRead(model);
+            upsertedModelsByPrimaryKey.put(primaryKey.getSerialized(upsertedModel), upsertedModel);
+        }
+        upsertedModels.put(model, upsertedModel);
+        return upsertedModel;
+    }
+
+    /**
+     * A variant of {@link #upsertOnce(Object)}, which does not load the associated model if its row id has been upserted.
+     *
+     * @param association An association
+     * @return The upserted model
+     */
+    @NonNull
+    public Model upsertOnce(@NonNull SingleAssociation<Model> association) {
+        Model upsertedModel = upsertedModelsByPrimaryKey.get(association.getId());
+        if (upsertedModel != null) {
+            return upsertedModel;
+        }
+        return upsertOnce(association.get());
+    }
+
+    static boolean isZero(@Nullable Object value) {
+        return value instanceof Number && ((Number) value).longValue() == 0;
+    }
+
+    Database getDatabase() {
+        return conn.getWritableDatabase();
+    }
+
+    /**
+     * Releases the statements and fires data set changed events, including those of the association upserters.
+     */
+    @Override
+    public void close() {
+        if (root) {
+            for (Upserter<?> upserter : associationUpserters.values()) {
+                upserter.closeStatements();
+            }
+            associationUpserters.clear();
+        }
+        closeStatements();
+    }
+
+    void closeStatements() {
+        if (insertStatement != null) {
+            conn.statementCache.release(insertSql, insertStatement);
+            insertStatement = null;
+        }
+        if (updateOrUpsertStatement != null) {
+            conn.statementCache.release(updateOrUpsertSql, updateOrUpsertStatement);
+            updateOrUpsertStatement = null;
+        }
+
+        if (insertedCount != 0) {
+            conn.trigger(DataSetChangedEvent.Type.INSERT, schema);
+        }
+        if (updatedCount != 0) {
+            conn.trigger(DataSetChangedEvent.Type.UPDATE, schema);
+        }
+        insertedCount = 0;
+        updatedCount = 0;
+        upsertedModels.clear();
+        upsertedModelsByPrimaryKey.clear();
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma;
+
+import com.github.gfx.android.orma.core.Database;
+import com.github.gfx.android.orma.function.Consumer;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A write-behind queue with group commit, owned by {@link OrmaConnection}.
+ * Tasks are run by a single writer thread, and tasks queued within a short period are committed in a transaction,
+ * which reduces the number of {@code fsync(2)} and coalesces data set changed events into one per commit.
+ * A future returned by {@code submit()} is completed after the transaction is committed.
+ * Each task runs exactly once in a {@code SAVEPOINT}: if a task throws an exception, only its changes are rolled back
+ * and the other tasks are committed.
+ */
+public class WriteQueue implements Closeable {
+
+    static final String THREAD_NAME = "Orma-WriteQueue";
+
+    static final String SAVEPOINT = "orma_write_queue_task";
+
+    /**
+     * {@code ROLLBACK TO} with a leading comment, because Android's {@code SQLiteSession} takes any statement
+     * which starts with {@code ROLLBACK} as the end of the whole transaction.
+     */
+    static final String ROLLBACK_TO_SAVEPOINT = "/* savepoint */ ROLLBACK TO " + SAVEPOINT;
+
+    final OrmaConnection conn;
+
+    final int maxBatchSize;
+
+    final long maxDelayMillis;
+
+    final BlockingQueue<Task<?>> queue = new LinkedBlockingQueue<>();
+
+    static final Callable<Void> NOOP = new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+            return null;
+        }
+    };
+
+    final Task<Void> stopSignal = new Task<>(NOOP, null);
+
+    final Thread thread;
+
+    volatile boolean closed = false;
+
+    /**
+     * @param conn           The connection to write things
+     * @param maxBatchSize   The max number of tasks committed in a transaction
+     * @param maxDelayMillis The max time to wait for more tasks since the first task of a transaction is queued
+     */
+    public WriteQueue(@NonNull OrmaConnection conn, @IntRange(from = 1) int maxBatchSize,
+            @IntRange(from = 0) long maxDelayMillis) {
+        this.conn = conn;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        }, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a task to write things.
+     *
+     * @param task A task which runs in a transaction on the writer thread
+     * @return A future completed after the transaction is committed
+     */
+    @NonNull
+    public Future<Void> submit(@NonNull final Runnable task) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                task.run();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Queues a task to write things.
+     *
+     * @param task A task which runs in a transaction on the writer thread
+     * @return A future of the result of {@code task}, completed after the transaction is committed
+     */
+    @NonNull
+    public <T> Future<T> submit(@NonNull Callable<T> task) {
+        return submit(task, null);
+    }
+
+    /**
+     * Queues a task to write things.
+     *
+     * @param task   A task which runs in a transaction on the writer thread
+     * @param onDone Called with the completed future after the transaction is committed or rolled back
+     * @return A future of the result of {@code task}, completed after the transaction is committed
+     */
+    @NonNull
+    public <T> Future<T> submit(@NonNull Callable<T> task, @Nullable Consumer<Future<T>> onDone) {
+        Task<T> future = new Task<>(task, onDone);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("WriteQueue has been closed");
+            }
+            queue.add(future);
+        }
+        return future;
+    }
+
+    /**
+     * Blocks until all the tasks queued before the call are committed.
+     */
+    public void flush() throws InterruptedException {
+        if (Thread.currentThread() == thread) {
+            throw new IllegalStateException("flush() must not be called in tasks");
+        }
+        Future<Void> future = submit(NOOP);
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Commits the queued tasks and stops the writer thread. Tasks can no longer be queued.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(stopSignal);
+        }
+
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    void runLoop() {
+        List<Task<?>> batch = new ArrayList<>(Math.min(maxBatchSize, 256));
+        boolean running = true;
+        while (running) {
+            try {
+                Task<?> first = queue.take();
+                if (first == stopSignal) {
+                    break;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+                while (batch.size() < maxBatchSize) {
+                    long timeout = deadline - System.nanoTime();
+                    Task<?> next = timeout > 0 ? queue.poll(timeout, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == stopSignal) {
+                        running = false;
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+
+            commit(batch);
+            batch.clear();
+        }
+
+        // the loop also stops when the writer thread is interrupted, where close() has not been called
+        synchronized (this) {
+            closed = true;
+        }
+
+        // tasks queued after close() or before the interruption
+        Task<?> task;
+        while ((task = queue.poll()) != null) {
+            task.cancel(false);
+        }
+    }
+
+    void commit(List<Task<?>> batch) {
+        final List<Task<?>> tasks = new ArrayList<>(batch.size());
+        for (Task<?> task : batch) {
+            if (!task.isCancelled()) {
+                tasks.add(task);
+            }
+        }
+
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        try {
+            conn.transactionSync(new Runnable() {
+                @Override
+                public void run() {
+                    Database db = conn.getWritableDatabase();
+                    for (Task<?> task : tasks) {
+                        db.execSQL("SAVEPOINT " + SAVEPOINT);
+                        if (!task.execute()) {
+                            db.execSQL(ROLLBACK_TO_SAVEPOINT);
+                        }
+                        db.execSQL("RELEASE " + SAVEPOINT);
+                    }
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            for (Task<?> task : tasks) {
+                task.fail(e);
+            }
+            return;
+        }
+
+        for (Task<?> task : tasks) {
+            task.complete();
+        }
+    }
+
+    /**
+     * A future of a task, which is run only by the writer thread and thus is not a {@code Runnable}.
+     */
+    static class Task<T> implements Future<T> {
+
+        final Callable<T> callable;
+
+        @Nullable
+        final Consumer<Future<T>> onDone;
+
+        T result;
+
+        Exception error;
+
+        // guarded by this
+        private boolean done;
+
+        private boolean cancelled;
+
+        private T value;
+
+        private Throwable exception;
+
+        Task(Callable<T> callable, @Nullable Consumer<Future<T>> onDone) {
+            this.callable = callable;
+            this.onDone = onDone;
+        }
+
+        boolean execute() {
+            try {
+                result = callable.call();
+                error = null;
+                return true;
+            } catch (Exception e) {
+                result = null;
+                error = e;
+                return false;
+            }
+        }
+
+        void complete() {
+            if (error != null) {
+                finish(null, error, false);
+            } else {
+                finish(result, null, false);
+            }
+        }
+
+        void fail(Throwable e) {
+            finish(null, e, false);
+        }
+
+        private boolean finish(T value, Throwable exception, boolean cancelled) {
+            synchronized (this) {
+                if (done) {
+                    return false;
+                }
+                this.done = true;
+                this.cancelled = cancelled;
+                this.value = value;
+                this.exception = exception;
+                notifyAll();
+            }
+            if (onDone != null) {
+                onDone.accept(this);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return finish(null, null, true);
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public synchronized T get() throws InterruptedException, ExecutionException {
+            while (!done) {
+                wait();
+            }
+            return report();
+        }
+
+        @Override
+        public synchronized T get(long timeout, @NonNull TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!done) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return report();
+        }
+
+        private T report() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (exception != null) {
+                throw new ExecutionException(exception);
+            }
+            return value;
+        }
+    }
+}
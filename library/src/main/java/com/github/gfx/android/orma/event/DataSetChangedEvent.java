@@ -16,9 +16,15 @@
 
 package com.github.gfx.android.orma.event;
 
+import com.github.gfx.android.orma.Schema;
 import com.github.gfx.android.orma.Selector;
 import com.github.gfx.android.orma.annotation.Experimental;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+
 @Experimental
 public class DataSetChangedEvent<S extends Selector<?, ?>> {
     public enum Type {
@@ -28,13 +34,30 @@ public class DataSetChangedEvent<S extends Selector<?, ?>> {
         TRANSACTION,
     }
 
+    /**
+     * The max number of row ids an event carries, which is the default value of {@code SQLITE_MAX_VARIABLE_NUMBER}.
+     * Events which affect more rows have no row ids.
+     */
+    public static final int MAX_ROW_IDS = 999;
+
     private final Type type;
 
     private final S selector;
 
+    @Nullable
+    private final long[] rowIds;
+
     public DataSetChangedEvent(Type type, S selector) {
+        this(type, selector, null);
+    }
+
+    /**
+     * @param rowIds Sorted row ids of the changed rows, or {@code null} if unknown
+     */
+    public DataSetChangedEvent(Type type, S selector, @Nullable long[] rowIds) {
         this.type = type;
         this.selector = selector;
+        this.rowIds = rowIds;
     }
 
     public Type getType() {
@@ -44,4 +67,95 @@ public class DataSetChangedEvent<S extends Selector<?, ?>> {
     public S getSelector() {
         return selector;
     }
+
+    /**
+     * @return {@code true} if the event knows which rows are changed
+     */
+    public boolean hasRowIds() {
+        return rowIds != null;
+    }
+
+    /**
+     * @return Sorted row ids of the inserted, updated or deleted rows, or {@code null} if unknown,
+     * e.g. for multi-row {@code INSERT} statements or for more than {@link #MAX_ROW_IDS} rows
+     */
+    @Nullable
+    public long[] getRowIds() {
+        return rowIds;
+    }
+
+    /**
+     * @param rowId A row id
+     * @return {@code false} if the row is known to be unchanged
+     */
+    public boolean mayAffect(long rowId) {
+        return rowIds == null || Arrays.binarySearch(rowIds, rowId) >= 0;
+    }
+
+    /**
+     * Merges two events of the same selector into one, e.g. in order to coalesce a burst of events.
+     *
+     * @param other A later event
+     * @return An event of the same type if both have the same type or {@link Type#TRANSACTION} otherwise,
+     * with the union of the row ids, which is unknown if either of them is unknown or there are too many rows
+     */
+    @NonNull
+    public DataSetChangedEvent<S> merge(@NonNull DataSetChangedEvent<S> other) {
+        Type mergedType = (type == other.type) ? type : Type.TRANSACTION;
+        return new DataSetChangedEvent<>(mergedType, other.selector, unionRowIds(rowIds, other.rowIds));
+    }
+
+    @Nullable
+    static long[] unionRowIds(@Nullable long[] a, @Nullable long[] b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        long[] union = new long[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            long rowId;
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                rowId = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                rowId = b[j++];
+            } else {
+                rowId = a[i++];
+                j++;
+            }
+            union[n++] = rowId;
+        }
+        return n <= MAX_ROW_IDS ? Arrays.copyOf(union, n) : null;
+    }
+
+    /**
+     * Narrows the selector to the changed rows, so that an observer can test its predicates against them,
+     * e.g. {@code event.selectChangedRows().isEmpty()} means that no changed row is in the result set now.
+     * Note that deleted rows no longer exist, and updated rows might have left the result set.
+     *
+     * @return A copy of the selector with {@code _rowid_ IN (...)}, or a copy of the selector itself if the row ids
+     * are unknown
+     */
+    @SuppressWarnings("unchecked")
+    @NonNull
+    public S selectChangedRows() {
+        Selector<?, ?> changedRows = selector.clone();
+        if (rowIds == null) {
+            return (S) changedRows;
+        }
+        changedRows.groupConditions();
+
+        Schema<?> schema = selector.getSchema();
+        String tableAlias = schema.getEscapedTableAlias();
+        StringBuilder clause = new StringBuilder();
+        clause.append(tableAlias == null ? schema.getEscapedTableName() : tableAlias);
+        clause.append(".`_rowid_` IN (");
+        Object[] args = new Object[rowIds.length];
+        for (int i = 0; i < rowIds.length; i++) {
+            clause.append(i == 0 ? "?" : ",?");
+            args[i] = rowIds[i];
+        }
+        clause.append(')');
+        changedRows.where(clause, args);
+        return (S) changedRows;
+    }
 }
@@ -20,6 +20,7 @@ import com.github.gfx.android.orma.Schema;
 import com.github.gfx.android.orma.annotation.Experimental;
 import com.github.gfx.android.orma.core.Database;
 
+import android.support.annotation.Nullable;
 import android.support.annotation.RestrictTo;
 
 /**
@@ -29,17 +30,31 @@ import android.support.annotation.RestrictTo;
 @Experimental
 public interface DataSetChangedTrigger {
 
-    <Model> void fire(Database db, DataSetChangedEvent.Type type, Schema<Model> schema);
+    /**
+     * @param rowIds Row ids of the changed rows, or {@code null} if unknown
+     */
+    <Model> void fire(Database db, DataSetChangedEvent.Type type, Schema<Model> schema, @Nullable long[] rowIds);
 
     void fireForTransaction();
 
+    /**
+     * @return {@code true} if someone observes the table, where the connection collects row ids of changed rows
+     */
+    boolean isObserving(Schema<?> schema);
+
     class NoOp implements DataSetChangedTrigger {
 
         @Override
-        public <Model> void fire(Database db, DataSetChangedEvent.Type type, Schema<Model> schema) {
+        public <Model> void fire(Database db, DataSetChangedEvent.Type type, Schema<Model> schema,
+                @Nullable long[] rowIds) {
             // Nothing to do
         }
 
+        @Override
+        public boolean isObserving(Schema<?> schema) {
+            return false;
+        }
+
         @Override
         public void fireForTransaction() {
             // Nothing to do
@@ -22,6 +22,7 @@ import com.github.gfx.android.orma.function.Function1;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.RestrictTo;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -36,8 +37,11 @@ public abstract class OrmaConditionBase<Model, C extends OrmaConditionBase<Model
     @Nullable
     protected StringBuilder whereClause;
 
+    /**
+     * Arguments with their types, i.e. {@code null}, {@link Long}, {@link Double}, {@code byte[]} or {@link String}.
+     */
     @Nullable
-    protected ArrayList<String> bindArgs;
+    protected ArrayList<Object> bindArgs;
 
     public OrmaConditionBase(@NonNull OrmaConnection conn) {
         this.conn = conn;
@@ -66,7 +70,13 @@ public abstract class OrmaConditionBase<Model, C extends OrmaConditionBase<Model
             if (arg == null) {
                 bindArgs.add(null);
             } else if (arg instanceof Boolean) {
-                bindArgs.add((Boolean) arg ? "1" : "0");
+                bindArgs.add((Boolean) arg ? 1L : 0L);
+            } else if (arg instanceof Double || arg instanceof Float) {
+                bindArgs.add(((Number) arg).doubleValue());
+            } else if (OrmaConnection.isIntegralNumber(arg)) {
+                bindArgs.add(((Number) arg).longValue());
+            } else if (arg instanceof byte[] || arg instanceof String) {
+                bindArgs.add(arg);
             } else {
                 bindArgs.add(arg.toString());
             }
@@ -193,16 +203,31 @@ public abstract class OrmaConditionBase<Model, C extends OrmaConditionBase<Model
         return (C) this;
     }
 
+    /**
+     * Encloses the current conditions in parentheses, so that conditions added later are combined with them
+     * by {@code AND} even if {@link #or()} has been called.
+     *
+     * @return the receiver itself
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    @SuppressWarnings("unchecked")
+    public C groupConditions() {
+        if (whereClause != null) {
+            whereClause.insert(0, '(').append(')');
+        }
+        whereConjunction = " AND ";
+        return (C) this;
+    }
+
     @Nullable
     protected String getWhereClause() {
         return whereClause != null ? whereClause.toString() : null;
     }
 
     @Nullable
-    protected String[] getBindArgs() {
+    protected Object[] getBindArgs() {
         if (bindArgs != null) {
-            String[] array = new String[bindArgs.size()];
-            return bindArgs.toArray(array);
+            return bindArgs.toArray();
         } else {
             return null;
         }
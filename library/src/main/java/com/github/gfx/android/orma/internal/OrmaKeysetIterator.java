@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gfx.android.orma.internal;
+
+import com.github.gfx.android.orma.ColumnDef;
+import com.github.gfx.android.orma.OrderSpec;
+import com.github.gfx.android.orma.Schema;
+import com.github.gfx.android.orma.Selector;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator with keyset pagination, which fetches the next page with a condition like
+ * {@code WHERE (orderColumns..., primaryKey) > (lastValues...)}.
+ * Because row values are not available in older SQLite, the condition is expanded into {@code OR} and {@code AND}.
+ */
+public class OrmaKeysetIterator<Model> implements Iterator<Model> {
+
+    static final int BATCH_SIZE = OrmaIterator.BATCH_SIZE;
+
+    final Selector<Model, ?> selector;
+
+    final List<OrderSpec<Model>> keys;
+
+    final String[] columns;
+
+    final int keyColumnsOffset;
+
+    @Nullable
+    final Model reuse;
+
+    long remaining;
+
+    long offset;
+
+    long pageSize;
+
+    Object[] lastValues;
+
+    Cursor cursor;
+
+    boolean hasMorePages;
+
+    public OrmaKeysetIterator(@NonNull Selector<Model, ?> selector, @NonNull List<OrderSpec<Model>> orderSpecs) {
+        this(selector, orderSpecs, null);
+    }
+
+    /**
+     * @param reuse If non-null, {@link #next()} overwrites and returns it instead of creating new models.
+     */
+    public OrmaKeysetIterator(@NonNull Selector<Model, ?> selector, @NonNull List<OrderSpec<Model>> orderSpecs,
+            @Nullable Model reuse) {
+        this.reuse = reuse;
+        this.remaining = selector.hasLimit() ? selector.getLimit() : -1L;
+        this.offset = selector.hasOffset() ? selector.getOffset() : 0L;
+
+        this.selector = selector.clone();
+        this.selector.resetLimitClause();
+        this.selector.groupConditions();
+
+        keys = buildKeys(selector.getSchema(), orderSpecs);
+        if (keys.size() > orderSpecs.size()) {
+            this.selector.orderBy(keys.get(keys.size() - 1));
+        }
+
+        String[] resultColumns = selector.getResultColumns();
+        keyColumnsOffset = resultColumns.length;
+        columns = new String[resultColumns.length + keys.size()];
+        System.arraycopy(resultColumns, 0, columns, 0, resultColumns.length);
+        for (int i = 0; i < keys.size(); i++) {
+            columns[keyColumnsOffset + i] = keys.get(i).column.getQualifiedName();
+        }
+
+        fill();
+    }
+
+    /**
+     * @return The ordering terms followed by the primary key as the tiebreaker unless they already include it,
+     * which make the order total
+     */
+    @NonNull
+    public static <Model> List<OrderSpec<Model>> buildKeys(@NonNull Schema<Model> schema,
+            @NonNull List<OrderSpec<Model>> orderSpecs) {
+        ColumnDef<Model, ?> primaryKey = schema.getPrimaryKey();
+        List<OrderSpec<Model>> keys = new ArrayList<>(orderSpecs.size() + 1);
+        for (OrderSpec<Model> orderSpec : orderSpecs) {
+            keys.add(orderSpec);
+            if (orderSpec.column.getQualifiedName().equals(primaryKey.getQualifiedName())) {
+                return keys;
+            }
+        }
+        keys.add(primaryKey.orderInAscending());
+        return keys;
+    }
+
+    void fill() {
+        hasMorePages = false;
+        if (remaining == 0) {
+            return;
+        }
+
+        Selector<Model, ?> page = selector.clone();
+        if (lastValues != null) {
+            List<Object> args = new ArrayList<>();
+            page.where(buildSeekCondition(keys, lastValues, args), args.toArray());
+        }
+
+        pageSize = remaining != -1 ? Math.min(remaining, BATCH_SIZE) : BATCH_SIZE;
+        page.limit(pageSize);
+        if (offset != 0) {
+            page.offset(offset);
+            offset = 0;
+        }
+
+        cursor = page.executeWithColumns(columns);
+        if (!cursor.moveToFirst()) {
+            cursor.close();
+            cursor = null;
+        }
+    }
+
+    /**
+     * Builds {@code (k0 > ?) OR (k0 = ? AND k1 > ?) OR ...} with the direction and {@code NULL} of each key,
+     * where {@code NULL} comes first in {@code ASC} and last in {@code DESC} as SQLite does.
+     */
+    @NonNull
+    public static <Model> String buildSeekCondition(@NonNull List<OrderSpec<Model>> keys, @NonNull Object[] lastValues,
+            @NonNull List<Object> args) {
+        StringBuilder sb = new StringBuilder();
+
+        // a redundant range on the first key to use an index
+        OrderSpec<Model> first = keys.get(0);
+        if (lastValues[0] != null && (isAscending(first) || !first.column.isNullable())) {
+            sb.append(first.column.getQualifiedName()).append(isAscending(first) ? " >= ?" : " <= ?");
+            sb.append(" AND (");
+            args.add(lastValues[0]);
+        } else {
+            sb.append('(');
+        }
+
+        boolean needsOr = false;
+        for (int i = 0; i < keys.size(); i++) {
+            OrderSpec<Model> key = keys.get(i);
+            String name = key.column.getQualifiedName();
+            Object value = lastValues[i];
+
+            String after;
+            if (value == null) {
+                after = isAscending(key) ? name + " IS NOT NULL" : null;
+            } else if (isAscending(key)) {
+                after = name + " > ?";
+            } else {
+                after = key.column.isNullable() ? "(" + name + " < ? OR " + name + " IS NULL)" : name + " < ?";
+            }
+
+            if (after != null) {
+                if (needsOr) {
+                    sb.append(" OR ");
+                }
+                needsOr = true;
+                sb.append('(');
+                for (int j = 0; j < i; j++) {
+                    String prevName = keys.get(j).column.getQualifiedName();
+                    if (lastValues[j] == null) {
+                        sb.append(prevName).append(" IS NULL");
+                    } else {
+                        sb.append(prevName).append(" = ?");
+                        args.add(lastValues[j]);
+                    }
+                    sb.append(" AND ");
+                }
+                sb.append(after);
+                if (value != null) {
+                    args.add(value);
+                }
+                sb.append(')');
+            }
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
+    static boolean isAscending(OrderSpec<?> orderSpec) {
+        return !orderSpec.ordering.equals(OrderSpec.DESC);
+    }
+
+    /**
+     * Reads the values of {@code count} keys from the current row of {@code cursor}.
+     */
+    @NonNull
+    public static Object[] readKeyValues(@NonNull Cursor cursor, int offset, int count) {
+        Object[] values = new Object[count];
+        for (int i = 0; i < values.length; i++) {
+            int index = offset + i;
+            switch (cursor.getType(index)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    values[i] = null;
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    values[i] = cursor.getLong(index);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    values[i] = cursor.getDouble(index);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    values[i] = cursor.getString(index);
+                    break;
+                default:
+                    values[i] = cursor.getBlob(index);
+                    break;
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (cursor == null && hasMorePages) {
+            // fetches the next page as late as possible to see rows inserted during the iteration
+            fill();
+        }
+        return cursor != null;
+    }
+
+    @Override
+    public Model next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("OrmaKeysetIterator#next()");
+        }
+
+        Model model = reuse != null ? selector.readInto(reuse, cursor) : selector.newModelFromCursor(cursor);
+
+        if (remaining != -1) {
+            remaining--;
+        }
+
+        if (!cursor.isLast()) {
+            cursor.moveToNext();
+        } else {
+            hasMorePages = cursor.getPosition() + 1 == pageSize;
+            if (hasMorePages) {
+                lastValues = readKeyValues(cursor, keyColumnsOffset, keys.size());
+            }
+            cursor.close();
+            cursor = null;
+        }
+
+        return model;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Iterator#remove()");
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma.internal;
+
+import com.github.gfx.android.orma.Selector;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator which reads models page by page from another iterator and loads their associations
+ * given by {@link Selector#prefetch(com.github.gfx.android.orma.ColumnDef)} for each page.
+ */
+public class PrefetchingIterator<Model> implements Iterator<Model> {
+
+    static final int BATCH_SIZE = OrmaIterator.BATCH_SIZE;
+
+    final Selector<Model, ?> selector;
+
+    final Iterator<Model> iterator;
+
+    final List<Model> page = new ArrayList<>();
+
+    int position = 0;
+
+    public PrefetchingIterator(@NonNull Selector<Model, ?> selector, @NonNull Iterator<Model> iterator) {
+        this.selector = selector;
+        this.iterator = iterator;
+    }
+
+    void fill() {
+        page.clear();
+        position = 0;
+        while (page.size() < BATCH_SIZE && iterator.hasNext()) {
+            page.add(iterator.next());
+        }
+        selector.prefetchAssociations(page);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (position == page.size()) {
+            fill();
+        }
+        return position < page.size();
+    }
+
+    @Override
+    public Model next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("PrefetchingIterator#next()");
+        }
+        return page.get(position++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Iterator#remove()");
+    }
+}
@@ -23,12 +23,16 @@ import com.github.gfx.android.orma.core.Database;
 import com.github.gfx.android.orma.event.DataSetChangedEvent;
 import com.github.gfx.android.orma.event.DataSetChangedTrigger;
 
+import android.support.annotation.Nullable;
 import android.support.annotation.RestrictTo;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import io.reactivex.Observable;
@@ -36,16 +40,30 @@ import io.reactivex.Observer;
 import io.reactivex.subjects.PublishSubject;
 
 /**
- * Helper class for query observables. This class is NOT thread-safe.
+ * Helper class for query observables. Observers are indexed by schemas in copy-on-write arrays,
+ * so that {@link #fire(Database, DataSetChangedEvent.Type, Schema, long[])} only visits the observers of the changed table
+ * without locks. Collected observers are removed through a reference queue.
  */
 @RestrictTo(RestrictTo.Scope.LIBRARY)
 @Experimental
 public class RxDataSetChangedTrigger implements DataSetChangedTrigger {
 
-    // TODO: use well-tested concurrent weak maps
-    final Map<WeakReference<Observer<DataSetChangedEvent<?>>>, Selector<?, ?>> observerMap = new ConcurrentHashMap<>();
+    static final Registration[] EMPTY = new Registration[0];
 
-    Set<Schema<?>> changedDataSetInTransaction = null;
+    static final DataSetChangedEvent.Type[] TYPES = DataSetChangedEvent.Type.values();
+
+    /**
+     * Registrations for each schema. An array is never modified once it is put; guarded by {@link #queue} for writes.
+     */
+    final Map<Schema<?>, Registration[]> registrations = new ConcurrentHashMap<>();
+
+    final ReferenceQueue<Observer<DataSetChangedEvent<?>>> queue = new ReferenceQueue<>();
+
+    /**
+     * Changed tables and their row ids in a transaction of the current thread.
+     * A {@code null} value means that the row ids are unknown.
+     */
+    final ThreadLocal<Map<Schema<?>, TreeSet<Long>>> changedDataSetInTransaction = new ThreadLocal<>();
 
     public <S extends Selector<?, ?>> Observable<DataSetChangedEvent<S>> create(S selector) {
         PublishSubject<DataSetChangedEvent<S>> subject = PublishSubject.create();
@@ -55,58 +73,163 @@ public class RxDataSetChangedTrigger implements DataSetChangedTrigger {
 
     @SuppressWarnings("unchecked")
     public <S extends Selector<?, ?>> void register(Observer<DataSetChangedEvent<S>> observer, Selector<?, ?> selector) {
-        observerMap.put(new WeakReference<>((Observer<DataSetChangedEvent<?>>) (Object) observer), selector);
+        Registration registration = new Registration((Observer<DataSetChangedEvent<?>>) (Object) observer, selector, queue);
+        synchronized (queue) {
+            expungeStaleRegistrations();
+            Registration[] array = registrations.get(selector.getSchema());
+            if (array == null) {
+                array = EMPTY;
+            }
+            Registration[] newArray = Arrays.copyOf(array, array.length + 1);
+            newArray[array.length] = registration;
+            registrations.put(selector.getSchema(), newArray);
+        }
+    }
+
+    void expungeStaleRegistrations() {
+        Reference<?> ref;
+        while ((ref = queue.poll()) != null) {
+            unregister((Registration) ref);
+        }
+    }
+
+    void unregister(Registration registration) {
+        synchronized (queue) {
+            Schema<?> schema = registration.selector.getSchema();
+            Registration[] array = registrations.get(schema);
+            if (array == null) {
+                return;
+            }
+            int index = Arrays.asList(array).indexOf(registration);
+            if (index == -1) {
+                return;
+            }
+            if (array.length == 1) {
+                registrations.remove(schema);
+                return;
+            }
+            Registration[] newArray = new Registration[array.length - 1];
+            System.arraycopy(array, 0, newArray, 0, index);
+            System.arraycopy(array, index + 1, newArray, index, newArray.length - index);
+            registrations.put(schema, newArray);
+        }
+    }
+
+    @Override
+    public boolean isObserving(Schema<?> schema) {
+        return registrations.containsKey(schema);
     }
 
     @Override
-    public <Model> void fire(Database db, DataSetChangedEvent.Type type, Schema<Model> schema) {
-        if (observerMap.isEmpty()) {
+    public <Model> void fire(Database db, DataSetChangedEvent.Type type, Schema<Model> schema, @Nullable long[] rowIds) {
+        Registration[] array = registrations.get(schema);
+        if (array == null) {
             return;
         }
         if (db.inTransaction()) {
-            addChangedDataSetInTransaction(schema);
+            addChangedDataSetInTransaction(schema, rowIds);
             return;
         }
 
-        for (Map.Entry<WeakReference<Observer<DataSetChangedEvent<?>>>, Selector<?, ?>> entry : observerMap.entrySet()) {
-            Selector<?, ?> selector = entry.getValue();
-            if (schema == selector.getSchema()) {
-                WeakReference<Observer<DataSetChangedEvent<?>>> observerRef = entry.getKey();
-                if (observerRef.get() != null) {
-                    observerRef.get().onNext(new DataSetChangedEvent<>(type, selector));
-                } else {
-                    observerMap.remove(observerRef);
-                }
+        if (rowIds != null) {
+            rowIds = rowIds.clone();
+            Arrays.sort(rowIds);
+        }
+        dispatch(array, type, rowIds);
+    }
+
+    void dispatch(Registration[] array, DataSetChangedEvent.Type type, @Nullable long[] rowIds) {
+        for (Registration registration : array) {
+            Observer<DataSetChangedEvent<?>> observer = registration.get();
+            if (observer != null) {
+                observer.onNext(registration.createEvent(type, rowIds));
+            } else {
+                unregister(registration);
             }
         }
     }
 
-    private void addChangedDataSetInTransaction(Schema<?> schema) {
-        if (changedDataSetInTransaction == null) {
-            changedDataSetInTransaction = new HashSet<>();
+    private void addChangedDataSetInTransaction(Schema<?> schema, @Nullable long[] rowIds) {
+        Map<Schema<?>, TreeSet<Long>> changedDataSet = changedDataSetInTransaction.get();
+        if (changedDataSet == null) {
+            changedDataSet = new HashMap<>();
+            changedDataSetInTransaction.set(changedDataSet);
+        }
+
+        boolean known = !changedDataSet.containsKey(schema) || changedDataSet.get(schema) != null;
+        if (!known || rowIds == null) {
+            changedDataSet.put(schema, null);
+            return;
         }
 
-        changedDataSetInTransaction.add(schema);
+        TreeSet<Long> ids = changedDataSet.get(schema);
+        if (ids == null) {
+            ids = new TreeSet<>();
+            changedDataSet.put(schema, ids);
+        }
+        for (long rowId : rowIds) {
+            ids.add(rowId);
+        }
+        if (ids.size() > DataSetChangedEvent.MAX_ROW_IDS) {
+            changedDataSet.put(schema, null);
+        }
     }
 
     @Override
     public void fireForTransaction() {
-        Set<Schema<?>> schemaSet = changedDataSetInTransaction;
-        changedDataSetInTransaction = null;
-
-        if (schemaSet == null) {
+        Map<Schema<?>, TreeSet<Long>> changedDataSet = changedDataSetInTransaction.get();
+        if (changedDataSet == null) {
             return;
         }
-        for (Map.Entry<WeakReference<Observer<DataSetChangedEvent<?>>>, Selector<?, ?>> entry : observerMap.entrySet()) {
-            Selector<?, ?> selector = entry.getValue();
-            if (schemaSet.contains(selector.getSchema())) {
-                WeakReference<Observer<DataSetChangedEvent<?>>> observerRef = entry.getKey();
-                if (observerRef.get() != null) {
-                    observerRef.get().onNext(new DataSetChangedEvent<>(DataSetChangedEvent.Type.TRANSACTION, selector));
-                } else {
-                    observerMap.remove(observerRef);
-                }
+        changedDataSetInTransaction.remove();
+
+        for (Map.Entry<Schema<?>, TreeSet<Long>> entry : changedDataSet.entrySet()) {
+            Registration[] array = registrations.get(entry.getKey());
+            if (array != null) {
+                dispatch(array, DataSetChangedEvent.Type.TRANSACTION, toArray(entry.getValue()));
+            }
+        }
+    }
+
+    @Nullable
+    static long[] toArray(@Nullable TreeSet<Long> ids) {
+        if (ids == null) {
+            return null;
+        }
+        long[] array = new long[ids.size()];
+        int i = 0;
+        for (Long id : ids) {
+            array[i++] = id;
+        }
+        return array;
+    }
+
+    static class Registration extends WeakReference<Observer<DataSetChangedEvent<?>>> {
+
+        final Selector<?, ?> selector;
+
+        /**
+         * Events without row ids for each type, which are immutable and thus can be delivered repeatedly.
+         */
+        final DataSetChangedEvent<?>[] events = new DataSetChangedEvent<?>[TYPES.length];
+
+        Registration(Observer<DataSetChangedEvent<?>> observer, Selector<?, ?> selector,
+                ReferenceQueue<Observer<DataSetChangedEvent<?>>> queue) {
+            super(observer, queue);
+            this.selector = selector;
+        }
+
+        @SuppressWarnings("unchecked")
+        DataSetChangedEvent<?> createEvent(DataSetChangedEvent.Type type, @Nullable long[] rowIds) {
+            if (rowIds != null) {
+                return new DataSetChangedEvent<>(type, selector, rowIds);
+            }
+            DataSetChangedEvent<?> event = events[type.ordinal()];
+            if (event == null) {
+                event = new DataSetChangedEvent<>(type, selector);
+                events[type.ordinal()] = event;
             }
+            return event;
         }
     }
 }
@@ -94,4 +94,21 @@ public class RxInserter<Model> extends Inserter<Model> {
             }
         });
     }
+
+    /**
+     * {@link Single} wrapper to {@code executeAllInBatch(Iterable<Model>)}
+     *
+     * @param models model objects to insert
+     * @return It yields the number of inserted rows
+     */
+    @CheckResult
+    @NonNull
+    public Single<Integer> executeAllInBatchAsSingle(@NonNull final Iterable<Model> models) {
+        return Single.fromCallable(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return executeAllInBatch(models);
+            }
+        });
+    }
 }
@@ -20,15 +20,31 @@ import com.github.gfx.android.orma.OrmaConnection;
 import com.github.gfx.android.orma.OrmaDatabaseBuilderBase;
 import com.github.gfx.android.orma.Schema;
 import com.github.gfx.android.orma.Selector;
+import com.github.gfx.android.orma.WriteQueue;
 import com.github.gfx.android.orma.annotation.Experimental;
 import com.github.gfx.android.orma.event.DataSetChangedEvent;
 import com.github.gfx.android.orma.event.DataSetChangedTrigger;
+import com.github.gfx.android.orma.function.Consumer;
 
+import android.support.annotation.CheckResult;
 import android.support.annotation.NonNull;
 
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.CompletableOnSubscribe;
+import io.reactivex.CompletableSource;
+import io.reactivex.MaybeSource;
 import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.BiFunction;
+import io.reactivex.functions.Function;
 
 /**
  * Low-level interface to Orma database connection with RxJava support.
@@ -46,6 +62,107 @@ public class RxOrmaConnection extends OrmaConnection {
         return trigger.create(selector);
     }
 
+    /**
+     * Experimental API to observe data-set changed events, coalescing a burst of events into one, whose row ids
+     * are the union of theirs. See {@link DataSetChangedEvent#merge(DataSetChangedEvent)} for details.
+     *
+     * @param timeout    The time to wait for the data-set to stop changing
+     * @param maxLatency The max time to wait while the data-set keeps changing
+     * @param unit       The unit of {@code timeout} and {@code maxLatency}
+     * @param scheduler  The scheduler to wait and to yield events on
+     * @return A hot observable that yields {@link DataSetChangedEvent} after the target data-set is changed and then
+     * {@code timeout} passes without changes, or at the latest {@code maxLatency} after the change.
+     */
+    @Experimental
+    public <S extends Selector<?, ?>> Observable<DataSetChangedEvent<S>> createEventObservable(S selector,
+            long timeout, long maxLatency, @NonNull TimeUnit unit, @NonNull Scheduler scheduler) {
+        return coalesce(createEventObservable(selector), timeout, maxLatency, unit, scheduler,
+                new BiFunction<DataSetChangedEvent<S>, DataSetChangedEvent<S>, DataSetChangedEvent<S>>() {
+                    @Override
+                    public DataSetChangedEvent<S> apply(DataSetChangedEvent<S> a, DataSetChangedEvent<S> b)
+                            throws Exception {
+                        return a.merge(b);
+                    }
+                });
+    }
+
+    /**
+     * Debounces {@code source} by {@code timeout}, but unlike {@code debounce()} yields the items at the latest
+     * on every {@code maxLatency} tick, so that a steady stream of items cannot starve the downstream.
+     * Items in the same period are reduced by {@code merger}.
+     */
+    static <T> Observable<T> coalesce(@NonNull Observable<T> source, final long timeout, final long maxLatency,
+            @NonNull final TimeUnit unit, @NonNull final Scheduler scheduler, @NonNull final BiFunction<T, T, T> merger) {
+        return source.publish(new Function<Observable<T>, ObservableSource<T>>() {
+            @Override
+            public ObservableSource<T> apply(Observable<T> items) throws Exception {
+                Observable<T> boundaries = items.debounce(timeout, unit, scheduler)
+                        .mergeWith(items.sample(maxLatency, unit, scheduler));
+                return items.window(boundaries)
+                        .flatMapMaybe(new Function<Observable<T>, MaybeSource<T>>() {
+                            @Override
+                            public MaybeSource<T> apply(Observable<T> window) throws Exception {
+                                return window.reduce(merger);
+                            }
+                        });
+            }
+        });
+    }
+
+    /**
+     * RxJava 2.x {@code Completable} wrapper to {@link #startMigrationInBackground()}, which completes after the
+     * migration. The migration is started on subscription, and it blocks the subscribing thread,
+     * so subscribe it on a background scheduler.
+     *
+     * @return A {@code Completable} of the migration
+     */
+    @CheckResult
+    @NonNull
+    public Completable migrationAsCompletable() {
+        return Completable.defer(new Callable<CompletableSource>() {
+            @Override
+            public CompletableSource call() throws Exception {
+                return Completable.fromFuture(startMigrationInBackground());
+            }
+        });
+    }
+
+    /**
+     * RxJava 2.x {@code Completable} wrapper to {@link WriteQueue#submit(Runnable)},
+     * which completes after the transaction of {@code task} is committed. {@code task} is queued on subscription.
+     *
+     * @param task A task which runs in a transaction on the writer thread
+     * @return A {@code Completable} of the task
+     */
+    @CheckResult
+    @NonNull
+    public Completable writeBehindAsCompletable(@NonNull final Runnable task) {
+        return Completable.create(new CompletableOnSubscribe() {
+            @Override
+            public void subscribe(final CompletableEmitter emitter) throws Exception {
+                getWriteQueue().submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        task.run();
+                        return null;
+                    }
+                }, new Consumer<Future<Void>>() {
+                    @Override
+                    public void accept(Future<Void> future) {
+                        try {
+                            future.get();
+                            emitter.onComplete();
+                        } catch (ExecutionException e) {
+                            emitter.onError(e.getCause());
+                        } catch (Exception e) {
+                            emitter.onError(e);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
     @Override
     protected DataSetChangedTrigger getTrigger() {
         return trigger;
@@ -31,6 +31,7 @@ import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import io.reactivex.Maybe;
@@ -39,8 +40,11 @@ import io.reactivex.MaybeOnSubscribe;
 import io.reactivex.Observable;
 import io.reactivex.ObservableEmitter;
 import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.Scheduler;
 import io.reactivex.Single;
+import io.reactivex.functions.BiFunction;
 import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
 
 /**
  * Representation of a relation, or a {@code SELECT} query with RxJava support.
@@ -50,6 +54,11 @@ import io.reactivex.functions.Function;
  */
 public abstract class RxRelation<Model, R extends RxRelation<Model, ?>> extends Relation<Model, R> {
 
+    /**
+     * The default max latency of coalesced query observables, relative to their timeout.
+     */
+    public static final int MAX_LATENCY_FACTOR = 10;
+
     protected final RxOrmaConnection conn;
 
     public RxRelation(@NonNull RxOrmaConnection connection) {
@@ -285,16 +294,86 @@ public abstract class RxRelation<Model, R extends RxRelation<Model, ?>> extends
     }
 
     /**
-     * Experimental API to observe data-set changed events.
-     * This is provided to test whether it is useful or not, and not intended to be used in production yet.
+     * Experimental API to observe data-set changed events, coalescing a burst of events into one on {@link Schedulers#io()}.
+     *
+     * @param timeout The time to wait for the data-set to stop changing
+     * @param unit    The unit of {@code timeout}
+     * @param <S>     A concrete {@link Selector} class.
+     * @return A hot observable that yields {@link Selector} after the target data-set is changed and then
+     * {@code timeout} passes without changes.
+     * @see #createQueryObservable(long, TimeUnit, Scheduler)
+     */
+    @Experimental
+    public <S extends Selector<Model, ?>> Observable<S> createQueryObservable(long timeout, @NonNull TimeUnit unit) {
+        return createQueryObservable(timeout, unit, Schedulers.io());
+    }
+
+    /**
+     * Experimental API to observe data-set changed events, coalescing a burst of events into one,
+     * which waits for {@link #MAX_LATENCY_FACTOR} times {@code timeout} at most.
+     *
+     * @param timeout   The time to wait for the data-set to stop changing
+     * @param unit      The unit of {@code timeout}
+     * @param scheduler The scheduler to wait and to yield selectors on
+     * @param <S>       A concrete {@link Selector} class.
+     * @return A hot observable that yields {@link Selector} after the target data-set is changed and then
+     * {@code timeout} passes without changes.
+     * @see #createQueryObservable(long, long, TimeUnit, Scheduler)
+     */
+    @Experimental
+    public <S extends Selector<Model, ?>> Observable<S> createQueryObservable(long timeout, @NonNull TimeUnit unit,
+            @NonNull Scheduler scheduler) {
+        return createQueryObservable(timeout, timeout * MAX_LATENCY_FACTOR, unit, scheduler);
+    }
+
+    /**
+     * Experimental API to observe data-set changed events, coalescing a burst of events into one.
+     * The selector is yielded on {@code scheduler}, so a query in the downstream runs there.
+     * While the downstream is running, later events are coalesced into the latest one,
+     * so that at most one query is pending.
+     *
+     * @param timeout    The time to wait for the data-set to stop changing
+     * @param maxLatency The max time to wait while the data-set keeps changing
+     * @param unit       The unit of {@code timeout} and {@code maxLatency}
+     * @param scheduler  The scheduler to wait and to yield selectors on
+     * @param <S>        A concrete {@link Selector} class.
+     * @return A hot observable that yields {@link Selector} after the target data-set is changed and then
+     * {@code timeout} passes without changes, or at the latest {@code maxLatency} after the change.
+     */
+    @Experimental
+    public <S extends Selector<Model, ?>> Observable<S> createQueryObservable(long timeout, long maxLatency,
+            @NonNull TimeUnit unit, @NonNull Scheduler scheduler) {
+        return RxOrmaConnection.coalesce(this.<S>createQueryObservable(), timeout, maxLatency, unit, scheduler,
+                new BiFunction<S, S, S>() {
+                    @Override
+                    public S apply(S a, S b) throws Exception {
+                        return b;
+                    }
+                });
+    }
+
+    /**
+     * Experimental API to observe data-set changed events, which carry the row ids of changed rows if known.
+     * Use {@link DataSetChangedEvent#selectChangedRows()} to test whether the changed rows are in the relation.
      *
      * @param <S> A concrete {@link Selector} class.
-     * @return A hot observable that yields {@link Selector} when the target data-set is changed.
+     * @return A hot observable that yields {@link DataSetChangedEvent} when the target data-set is changed.
      */
     @Experimental
-    @Deprecated
     @SuppressWarnings("unchecked")
     public <S extends Selector<Model, ?>> Observable<DataSetChangedEvent<S>> createEventObservable() {
         return conn.createEventObservable((S) selector());
     }
+
+    /**
+     * Experimental API to observe data-set changed events, coalescing a burst of events into one.
+     *
+     * @see RxOrmaConnection#createEventObservable(Selector, long, long, TimeUnit, Scheduler)
+     */
+    @Experimental
+    @SuppressWarnings("unchecked")
+    public <S extends Selector<Model, ?>> Observable<DataSetChangedEvent<S>> createEventObservable(long timeout,
+            long maxLatency, @NonNull TimeUnit unit, @NonNull Scheduler scheduler) {
+        return conn.createEventObservable((S) selector(), timeout, maxLatency, unit, scheduler);
+    }
 }
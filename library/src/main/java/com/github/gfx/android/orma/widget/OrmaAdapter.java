@@ -18,25 +18,36 @@ package com.github.gfx.android.orma.widget;
 
 import com.github.gfx.android.orma.BuildConfig;
 import com.github.gfx.android.orma.Relation;
+import com.github.gfx.android.orma.Schema;
 import com.github.gfx.android.orma.Selector;
 import com.github.gfx.android.orma.annotation.Experimental;
+import com.github.gfx.android.orma.event.DataSetChangedEvent;
 import com.github.gfx.android.orma.exception.NoValueException;
 import com.github.gfx.android.orma.rx.RxRelation;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.support.annotation.CheckResult;
 import android.support.annotation.NonNull;
 import android.support.v4.util.LruCache;
 import android.view.LayoutInflater;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 import io.reactivex.Maybe;
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+import io.reactivex.functions.Predicate;
+import io.reactivex.schedulers.Schedulers;
 
 /**
  * A helper class that provides adapter class details.
@@ -48,30 +59,165 @@ public class OrmaAdapter<Model> {
 
     public static final int CACHE_SIZE = BuildConfig.DEBUG ? 2 : 256;
 
+    /**
+     * The max range of positions whose row ids are re-queried to find the cached items to evict.
+     */
+    static final int MAX_RELOADED_POSITIONS = CACHE_SIZE * 4;
+
     protected final Context context;
 
     protected final RxRelation<Model, ?> relation;
 
-    protected final LruCache<Integer, Model> cache = new LruCache<>(CACHE_SIZE);
+    /**
+     * Row ids of the cached items keyed by their positions, which tell the items to evict for a change.
+     */
+    final Map<Integer, Long> cachedRowIds = new HashMap<>();
+
+    protected final LruCache<Integer, Model> cache = new LruCache<Integer, Model>(CACHE_SIZE) {
+        @Override
+        protected void entryRemoved(boolean evicted, Integer position, Model oldValue, Model newValue) {
+            if (newValue == null) {
+                synchronized (cachedRowIds) {
+                    cachedRowIds.remove(position);
+                }
+            }
+        }
+    };
 
     protected final Observable<Selector<Model, ?>> queryObservable;
 
     protected final CompositeDisposable queryObservableSubscription;
 
+    /**
+     * The number of items as of the last data set changed event, or {@code -1} if unknown.
+     */
+    protected volatile int itemCountForEvents = -1;
+
     public OrmaAdapter(@NonNull Context context, @NonNull RxRelation<Model, ?> relation) {
+        this(context, relation, Schedulers.io());
+    }
+
+    /**
+     * @param eventScheduler A scheduler where {@link #onDataSetChanged(DataSetChangedEvent)} runs,
+     *                       instead of the thread that changed the data set
+     */
+    public OrmaAdapter(@NonNull Context context, @NonNull RxRelation<Model, ?> relation,
+            @NonNull Scheduler eventScheduler) {
         this.context = context;
         this.relation = relation;
-        this.queryObservable = relation.createQueryObservable();
+        this.queryObservable = relation.<Selector<Model, ?>>createEventObservable()
+                .observeOn(eventScheduler)
+                .filter(new Predicate<DataSetChangedEvent<Selector<Model, ?>>>() {
+                    @Override
+                    public boolean test(DataSetChangedEvent<Selector<Model, ?>> event) throws Exception {
+                        return onDataSetChanged(event);
+                    }
+                })
+                .doOnNext(new Consumer<DataSetChangedEvent<Selector<Model, ?>>>() {
+                    @Override
+                    public void accept(DataSetChangedEvent<Selector<Model, ?>> event) throws Exception {
+                        evictChangedItems(event);
+                    }
+                })
+                .map(new Function<DataSetChangedEvent<Selector<Model, ?>>, Selector<Model, ?>>() {
+                    @Override
+                    public Selector<Model, ?> apply(DataSetChangedEvent<Selector<Model, ?>> event) throws Exception {
+                        return event.getSelector();
+                    }
+                })
+                .share();
 
         queryObservableSubscription = new CompositeDisposable();
         queryObservableSubscription.add(queryObservable.subscribe(new Consumer<Selector<Model, ?>>() {
             @Override
-            public void accept(Selector<Model, ?> models) throws Exception {
-                cache.evictAll();
+            public void accept(Selector<Model, ?> selector) throws Exception {
+                // keeps the shared observable connected
             }
         }));
     }
 
+    /**
+     * Checks a data set changed event on the event scheduler, because it queries the database.
+     * An event with row ids is ignored if no changed row is in the relation and the number of items is unchanged,
+     * because changed rows can neither enter nor leave the relation in that case.
+     *
+     * @param event A data set changed event
+     * @return {@code true} if the items might be changed, where {@link #getQueryObservable()} yields the selector
+     */
+    protected boolean onDataSetChanged(@NonNull DataSetChangedEvent<Selector<Model, ?>> event) {
+        if (event.hasRowIds()) {
+            int lastItemCount = itemCountForEvents;
+            int itemCount = relation.count();
+            itemCountForEvents = itemCount;
+            if (lastItemCount == itemCount && event.selectChangedRows().isEmpty()) {
+                return false;
+            }
+        } else {
+            itemCountForEvents = -1;
+        }
+        return true;
+    }
+
+    /**
+     * Evicts the cached items which an accepted event might have changed, on the event scheduler.
+     * With row ids, only the items of the changed rows and the items whose positions have shifted are evicted,
+     * which are found by re-querying the row ids in the range of the cached positions.
+     *
+     * @param event A data set changed event which {@link #onDataSetChanged(DataSetChangedEvent)} has accepted
+     */
+    protected void evictChangedItems(@NonNull DataSetChangedEvent<Selector<Model, ?>> event) {
+        if (!event.hasRowIds()) {
+            cache.evictAll();
+            return;
+        }
+
+        Map<Integer, Long> rowIds;
+        synchronized (cachedRowIds) {
+            rowIds = new HashMap<>(cachedRowIds);
+        }
+        if (rowIds.isEmpty()) {
+            return;
+        }
+        int start = Collections.min(rowIds.keySet());
+        int end = Collections.max(rowIds.keySet()) + 1;
+        if (end - start > MAX_RELOADED_POSITIONS) {
+            cache.evictAll();
+            return;
+        }
+
+        long[] currentRowIds = loadRowIds(start, end - start);
+        for (Map.Entry<Integer, Long> entry : rowIds.entrySet()) {
+            int i = entry.getKey() - start;
+            long rowId = entry.getValue();
+            if (i >= currentRowIds.length || currentRowIds[i] != rowId || event.mayAffect(rowId)) {
+                cache.remove(entry.getKey());
+            }
+        }
+    }
+
+    @NonNull
+    long[] loadRowIds(int offset, int limit) {
+        Selector<Model, ?> selector = relation.selector();
+        selector.offset(offset).limit(limit);
+        Cursor cursor = selector.executeWithColumns(getRowIdColumn());
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @NonNull
+    String getRowIdColumn() {
+        Schema<Model> schema = relation.getSchema();
+        String tableAlias = schema.getEscapedTableAlias();
+        return (tableAlias == null ? schema.getEscapedTableName() : tableAlias) + ".`_rowid_`";
+    }
+
     @NonNull
     public Observable<Selector<Model, ?>> getQueryObservable() {
         return queryObservable;
@@ -117,12 +263,40 @@ public class OrmaAdapter<Model> {
         }
         Model item = cache.get(position);
         if (item == null) {
-            item = relation.get(position);
-            cache.put(position, item);
+            item = loadItem(position);
         }
         return item;
     }
 
+    /**
+     * Loads and caches the item at {@code position} with its row id.
+     */
+    @NonNull
+    Model loadItem(int position) throws NoValueException {
+        // the last column is the rowid to find the cached item of a changed row
+        Selector<Model, ?> selector = relation.selector();
+        selector.offset(position).limit(1);
+        String[] resultColumns = selector.getResultColumns();
+        String[] columns = Arrays.copyOf(resultColumns, resultColumns.length + 1);
+        columns[resultColumns.length] = getRowIdColumn();
+
+        Cursor cursor = selector.executeWithColumns(columns);
+        try {
+            if (!cursor.moveToFirst()) {
+                throw new NoValueException("Expected single get for " + position + " but nothing for "
+                        + relation.getSchema().getTableName());
+            }
+            Model item = selector.newModelFromCursor(cursor);
+            synchronized (cachedRowIds) {
+                cachedRowIds.put(position, cursor.getLong(resultColumns.length));
+            }
+            cache.put(position, item);
+            return item;
+        } finally {
+            cursor.close();
+        }
+    }
+
     @CheckResult
     @NonNull
     public Single<Model> getItemAsSingle(int position) {
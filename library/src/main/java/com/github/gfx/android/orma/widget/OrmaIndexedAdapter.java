@@ -0,0 +1,425 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gfx.android.orma.widget;
+
+import com.github.gfx.android.orma.BuildConfig;
+import com.github.gfx.android.orma.OrderSpec;
+import com.github.gfx.android.orma.Selector;
+import com.github.gfx.android.orma.annotation.Experimental;
+import com.github.gfx.android.orma.event.DataSetChangedEvent;
+import com.github.gfx.android.orma.exception.NoValueException;
+import com.github.gfx.android.orma.internal.OrmaKeysetIterator;
+import com.github.gfx.android.orma.rx.RxRelation;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.support.v4.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.reactivex.Scheduler;
+
+/**
+ * An {@link OrmaAdapter} that keeps an index of the row ids in the relation, in order to
+ * neither run {@code COUNT} for each item nor evict the whole cache for each change.
+ * Models are loaded by windows of {@link #WINDOW_SIZE} rows and cached by their row ids.
+ * <p>
+ * The index is updated by {@link #computeIndexUpdate()} in a background thread and then {@link #applyIndexUpdate(IndexUpdate)}
+ * in the main thread, which {@link OrmaRecyclerViewAdapter} does with fine-grained notifications.
+ * If the changed row ids are known and the relation is ordered by {@code orderBy(OrderSpec)} or not ordered,
+ * the index is patched with the positions of the changed rows instead of being reloaded.
+ *
+ * @param <Model> An Orma model class
+ */
+@Experimental
+public class OrmaIndexedAdapter<Model> extends OrmaAdapter<Model> {
+
+    public static final int WINDOW_SIZE = BuildConfig.DEBUG ? 2 : 32;
+
+    /**
+     * The max number of changed rows in the relation to patch the index with, each of which takes a {@code COUNT}
+     * to find its position.
+     */
+    public static final int MAX_PATCHED_ROWS = WINDOW_SIZE;
+
+    static final long[] EMPTY = new long[0];
+
+    protected final LruCache<Long, Model> models = new LruCache<>(CACHE_SIZE);
+
+    /**
+     * The index which the views see, accessed in the main thread.
+     */
+    @Nullable
+    long[] rowIds;
+
+    /**
+     * The latest index computed by {@link #computeIndexUpdate()}.
+     */
+    @Nullable
+    volatile long[] indexedRowIds;
+
+    /**
+     * Row ids changed since the last {@link #computeIndexUpdate()}, or {@code null} if unknown.
+     */
+    @Nullable
+    Set<Long> changedRowIds = new HashSet<>();
+
+    public OrmaIndexedAdapter(@NonNull Context context, @NonNull RxRelation<Model, ?> relation) {
+        super(context, relation);
+    }
+
+    public OrmaIndexedAdapter(@NonNull Context context, @NonNull RxRelation<Model, ?> relation,
+            @NonNull Scheduler eventScheduler) {
+        super(context, relation, eventScheduler);
+    }
+
+    /**
+     * Records changed row ids for the next {@link #computeIndexUpdate()}, on the event scheduler.
+     * An event is ignored if none of its rows is or was in the relation.
+     */
+    @Override
+    protected boolean onDataSetChanged(@NonNull DataSetChangedEvent<Selector<Model, ?>> event) {
+        long[] indexed = indexedRowIds;
+        if (event.hasRowIds() && indexed != null) {
+            boolean affected = false;
+            for (long rowId : indexed) {
+                if (event.mayAffect(rowId)) {
+                    affected = true;
+                    break;
+                }
+            }
+            if (!affected && event.selectChangedRows().isEmpty()) {
+                return false;
+            }
+        }
+
+        synchronized (this) {
+            if (event.hasRowIds() && changedRowIds != null) {
+                for (long rowId : event.getRowIds()) {
+                    changedRowIds.add(rowId);
+                }
+            } else {
+                changedRowIds = null;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Patches the index with the changed rows, or re-queries the row ids of the relation if the changed rows are
+     * unknown. Only the row ids are read, so it is much cheaper than reading models.
+     *
+     * @return A diff between the last computed index and the new one
+     */
+    @WorkerThread
+    @NonNull
+    public IndexUpdate computeIndexUpdate() {
+        Set<Long> changed;
+        synchronized (this) {
+            changed = changedRowIds;
+            changedRowIds = new HashSet<>();
+        }
+
+        long[] oldRowIds = indexedRowIds;
+        IndexUpdate update = null;
+        if (oldRowIds != null && changed != null) {
+            update = patchIndex(oldRowIds, changed);
+        }
+        if (update == null) {
+            update = new IndexUpdate(oldRowIds != null ? oldRowIds : EMPTY, loadRowIds(), changed);
+        }
+        indexedRowIds = update.newRowIds;
+        return update;
+    }
+
+    /**
+     * Removes the changed rows from the index and inserts the ones in the relation at the positions given by
+     * counting the rows after them in the order of the relation.
+     *
+     * @return A patched update, or {@code null} if the index cannot be patched
+     */
+    @Nullable
+    IndexUpdate patchIndex(@NonNull long[] oldRowIds, @NonNull Set<Long> changed) {
+        Selector<Model, ?> selector = relation.selector();
+        List<OrderSpec<Model>> keys = selector.getKeys();
+        if (keys == null || selector.hasLimit() || selector.hasOffset()) {
+            return null;
+        }
+
+        int[] removedPositions = new int[oldRowIds.length];
+        int removed = 0;
+        for (int i = oldRowIds.length - 1; i >= 0; i--) {
+            if (changed.contains(oldRowIds[i])) {
+                removedPositions[removed++] = i;
+            }
+        }
+        removedPositions = Arrays.copyOf(removedPositions, removed);
+
+        List<Long> insertedRowIds = new ArrayList<>();
+        List<Object[]> insertedKeyValues = new ArrayList<>();
+        if (!changed.isEmpty()) {
+            StringBuilder whereClause = new StringBuilder(getRowIdColumn()).append(" IN (");
+            for (int i = 0; i < changed.size(); i++) {
+                whereClause.append(i == 0 ? "?" : ",?");
+            }
+            whereClause.append(')');
+            selector.groupConditions();
+            selector.where(whereClause, changed.toArray());
+
+            String[] columns = new String[keys.size() + 1];
+            columns[0] = getRowIdColumn();
+            for (int i = 0; i < keys.size(); i++) {
+                columns[i + 1] = keys.get(i).column.getQualifiedName();
+            }
+            Cursor cursor = selector.executeWithColumns(columns);
+            try {
+                if (cursor.getCount() > MAX_PATCHED_ROWS) {
+                    return null;
+                }
+                while (cursor.moveToNext()) {
+                    insertedRowIds.add(cursor.getLong(0));
+                    insertedKeyValues.add(OrmaKeysetIterator.readKeyValues(cursor, 1, keys.size()));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        int newLength = oldRowIds.length - removed + insertedRowIds.size();
+        long[] newRowIds = new long[newLength];
+        boolean[] filled = new boolean[newLength];
+        int[] insertedPositions = new int[insertedRowIds.size()];
+        if (!insertedRowIds.isEmpty() && relation.selector().count() != newLength) {
+            return null; // the relation has been changed again
+        }
+        for (int i = 0; i < insertedPositions.length; i++) {
+            List<Object> args = new ArrayList<>();
+            Selector<Model, ?> after = relation.selector();
+            after.groupConditions();
+            after.where(OrmaKeysetIterator.buildSeekCondition(keys, insertedKeyValues.get(i), args), args.toArray());
+            int position = newLength - after.count() - 1;
+            if (position < 0 || filled[position]) {
+                return null; // the relation has been changed again
+            }
+            newRowIds[position] = insertedRowIds.get(i);
+            filled[position] = true;
+            insertedPositions[i] = position;
+        }
+        Arrays.sort(insertedPositions);
+
+        int position = 0;
+        for (long rowId : oldRowIds) {
+            if (!changed.contains(rowId)) {
+                while (filled[position]) {
+                    position++;
+                }
+                newRowIds[position++] = rowId;
+            }
+        }
+        return new IndexUpdate(oldRowIds, newRowIds, changed, removedPositions, insertedPositions);
+    }
+
+    /**
+     * Makes the views see the new index and evicts the changed models.
+     *
+     * @return {@code false} if the index which the views see is not {@link IndexUpdate#oldRowIds}, where the diff cannot
+     * be applied and the adapter must be entirely refreshed.
+     */
+    @MainThread
+    public boolean applyIndexUpdate(@NonNull IndexUpdate update) {
+        boolean consistent = rowIds == update.oldRowIds;
+        rowIds = update.newRowIds;
+        if (update.changedRowIds == null) {
+            models.evictAll();
+        } else {
+            for (Long rowId : update.changedRowIds) {
+                models.remove(rowId);
+            }
+        }
+        return consistent;
+    }
+
+    @NonNull
+    long[] getRowIds() {
+        if (rowIds == null) {
+            long[] indexed = indexedRowIds;
+            if (indexed == null) {
+                indexed = loadRowIds();
+                indexedRowIds = indexed;
+            }
+            rowIds = indexed;
+        }
+        return rowIds;
+    }
+
+    /**
+     * Loads all the row ids in the order of the relation, which is made total with the primary key if possible
+     * in order to be consistent with {@link #patchIndex(long[], Set)}.
+     */
+    @NonNull
+    long[] loadRowIds() {
+        Selector<Model, ?> selector = relation.selector();
+        List<OrderSpec<Model>> keys = selector.getKeys();
+        if (keys != null) {
+            selector.orderBy(keys.get(keys.size() - 1));
+        }
+        Cursor cursor = selector.executeWithColumns(getRowIdColumn());
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    void loadWindow(@NonNull long[] rowIds, int position) {
+        int start = Math.max(0, position - WINDOW_SIZE / 2);
+        int end = Math.min(rowIds.length, start + WINDOW_SIZE);
+
+        StringBuilder whereClause = new StringBuilder(getRowIdColumn()).append(" IN (");
+        Object[] args = new Object[end - start];
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            if (models.get(rowIds[i]) == null) {
+                whereClause.append(n == 0 ? "?" : ",?");
+                args[n++] = rowIds[i];
+            }
+        }
+        whereClause.append(')');
+
+        // the last column is the rowid to find the position
+        Selector<Model, ?> selector = relation.selector();
+        selector.groupConditions();
+        selector.where(whereClause, Arrays.copyOf(args, n));
+        String[] resultColumns = selector.getResultColumns();
+        String[] columns = Arrays.copyOf(resultColumns, resultColumns.length + 1);
+        columns[resultColumns.length] = getRowIdColumn();
+
+        Cursor cursor = selector.executeWithColumns(columns);
+        try {
+            while (cursor.moveToNext()) {
+                models.put(cursor.getLong(resultColumns.length), selector.newModelFromCursor(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return The number of items in the index, without {@code COUNT}
+     */
+    @Override
+    public int getItemCount() {
+        return getRowIds().length;
+    }
+
+    /**
+     * @return The row id of the item at {@code position}, which can be used as a stable id
+     */
+    public long getItemId(int position) {
+        return getRowIds()[position];
+    }
+
+    /**
+     * @throws NoValueException if {@code position} is out of range or the row has been deleted but the index is not
+     *                          updated yet.
+     */
+    @NonNull
+    @Override
+    public Model getItem(int position) throws NoValueException {
+        long[] rowIds = getRowIds();
+        if (position < 0 || position >= rowIds.length) {
+            throw new NoValueException(
+                    "ouf of range: getItem(" + position + ") for the relation with " + rowIds.length + " items");
+        }
+        Model item = models.get(rowIds[position]);
+        if (item == null) {
+            loadWindow(rowIds, position);
+            item = models.get(rowIds[position]);
+        }
+        if (item == null) {
+            throw new NoValueException("deleted: getItem(" + position + ") for the row id " + rowIds[position]);
+        }
+        return item;
+    }
+
+    /**
+     * A diff between two indexes of row ids.
+     */
+    public static class IndexUpdate {
+
+        @NonNull
+        public final long[] oldRowIds;
+
+        @NonNull
+        public final long[] newRowIds;
+
+        /**
+         * Changed row ids, or {@code null} if unknown, where all the rows might have been changed.
+         */
+        @Nullable
+        public final Set<Long> changedRowIds;
+
+        /**
+         * Positions in {@link #oldRowIds} of the changed rows in descending order, or {@code null} if not patched.
+         */
+        @Nullable
+        public final int[] removedPositions;
+
+        /**
+         * Positions in {@link #newRowIds} of the changed rows in ascending order, or {@code null} if not patched.
+         * Removing {@link #removedPositions} and then inserting them turns the old index into the new one.
+         */
+        @Nullable
+        public final int[] insertedPositions;
+
+        public IndexUpdate(@NonNull long[] oldRowIds, @NonNull long[] newRowIds, @Nullable Set<Long> changedRowIds) {
+            this(oldRowIds, newRowIds, changedRowIds, null, null);
+        }
+
+        public IndexUpdate(@NonNull long[] oldRowIds, @NonNull long[] newRowIds, @Nullable Set<Long> changedRowIds,
+                @Nullable int[] removedPositions, @Nullable int[] insertedPositions) {
+            this.oldRowIds = oldRowIds;
+            this.newRowIds = newRowIds;
+            this.changedRowIds = changedRowIds;
+            this.removedPositions = removedPositions;
+            this.insertedPositions = insertedPositions;
+        }
+
+        /**
+         * @return {@code true} if the index is patched, where no diff is required
+         */
+        public boolean isPatched() {
+            return removedPositions != null && insertedPositions != null;
+        }
+
+        public boolean isChanged(long rowId) {
+            return changedRowIds == null || changedRowIds.contains(rowId);
+        }
+    }
+}
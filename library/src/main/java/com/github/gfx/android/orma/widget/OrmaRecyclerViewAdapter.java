@@ -24,6 +24,8 @@ import com.github.gfx.android.orma.rx.RxRelation;
 import android.content.Context;
 import android.support.annotation.CheckResult;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 
@@ -33,11 +35,16 @@ import io.reactivex.Maybe;
 import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
 import io.reactivex.schedulers.Schedulers;
 
 
 /**
  * A {@link RecyclerView.Adapter} with the Orma backend, createFactory like {@link android.widget.CursorAdapter}.
+ * <p>
+ * With {@link OrmaIndexedAdapter} as the delegate, changes are diffed in a background thread and dispatched as
+ * fine-grained notifications like {@link RecyclerView.Adapter#notifyItemRangeInserted(int, int)}
+ * instead of {@link RecyclerView.Adapter#notifyDataSetChanged()}.
  *
  * @param <Model> An Orma model class
  * @param <VH>    A concrete view holder class
@@ -54,6 +61,10 @@ public abstract class OrmaRecyclerViewAdapter<Model, VH extends RecyclerView.Vie
     @SuppressWarnings("unchecked")
     public OrmaRecyclerViewAdapter(@NonNull OrmaAdapter<Model> delegate) {
         this.delegate = delegate;
+        if (delegate instanceof OrmaIndexedAdapter) {
+            subscribeIndexUpdates((OrmaIndexedAdapter<Model>) delegate);
+            return;
+        }
         delegate.addSubscription(delegate.getQueryObservable()
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
@@ -65,6 +76,102 @@ public abstract class OrmaRecyclerViewAdapter<Model, VH extends RecyclerView.Vie
                 }));
     }
 
+    void subscribeIndexUpdates(final OrmaIndexedAdapter<Model> indexedDelegate) {
+        indexedDelegate.addSubscription(indexedDelegate.getQueryObservable()
+                .observeOn(Schedulers.io())
+                .map(new Function<Selector<Model, ?>, IndexDiff>() {
+                    @Override
+                    public IndexDiff apply(Selector<Model, ?> selector) throws Exception {
+                        return new IndexDiff(indexedDelegate.computeIndexUpdate());
+                    }
+                })
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Consumer<IndexDiff>() {
+                    @Override
+                    public void accept(IndexDiff diff) throws Exception {
+                        if (indexedDelegate.applyIndexUpdate(diff.update)) {
+                            diff.dispatchUpdatesTo(OrmaRecyclerViewAdapter.this);
+                        } else {
+                            notifyDataSetChanged();
+                        }
+                    }
+                }));
+    }
+
+    /**
+     * A diff of an index update, which is calculated by {@link DiffUtil} only if the index is not patched.
+     */
+    static class IndexDiff extends DiffUtil.Callback {
+
+        final OrmaIndexedAdapter.IndexUpdate update;
+
+        @Nullable
+        final DiffUtil.DiffResult result;
+
+        IndexDiff(OrmaIndexedAdapter.IndexUpdate update) {
+            this.update = update;
+            this.result = update.isPatched() ? null : DiffUtil.calculateDiff(this, true);
+        }
+
+        void dispatchUpdatesTo(RecyclerView.Adapter<?> adapter) {
+            if (result != null) {
+                result.dispatchUpdatesTo(adapter);
+                return;
+            }
+            int[] removedPositions = update.removedPositions;
+            int[] insertedPositions = update.insertedPositions;
+            assert removedPositions != null && insertedPositions != null;
+
+            if (isUpdatedInPlace(removedPositions, insertedPositions)) {
+                for (int position : insertedPositions) {
+                    adapter.notifyItemChanged(position);
+                }
+                return;
+            }
+            for (int position : removedPositions) {
+                adapter.notifyItemRemoved(position);
+            }
+            for (int position : insertedPositions) {
+                adapter.notifyItemInserted(position);
+            }
+        }
+
+        boolean isUpdatedInPlace(int[] removedPositions, int[] insertedPositions) {
+            if (removedPositions.length != insertedPositions.length) {
+                return false;
+            }
+            int n = removedPositions.length;
+            for (int i = 0; i < n; i++) {
+                int position = insertedPositions[i];
+                if (removedPositions[n - i - 1] != position
+                        || update.oldRowIds[position] != update.newRowIds[position]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return update.oldRowIds.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return update.newRowIds.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return update.oldRowIds[oldItemPosition] == update.newRowIds[newItemPosition];
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return !update.isChanged(update.newRowIds[newItemPosition]);
+        }
+    }
+
     @Override
     public int getItemCount() {
         return delegate.getItemCount();
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gfx.android.orma.test;
+
+import com.github.gfx.android.orma.BulkIO;
+import com.github.gfx.android.orma.annotation.OnConflict;
+import com.github.gfx.android.orma.exception.InvalidStatementException;
+import com.github.gfx.android.orma.test.model.Author;
+import com.github.gfx.android.orma.test.model.ModelWithBlob;
+import com.github.gfx.android.orma.test.model.OrmaDatabase;
+import com.github.gfx.android.orma.test.toolbox.OrmaFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class BulkIOTest {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    OrmaDatabase db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = OrmaFactory.create();
+
+        db.insertIntoAuthor(Author.create("foo"));
+        Author bar = Author.create("bar, \"the author\"");
+        bar.note = "line1\nline2";
+        db.insertIntoAuthor(bar);
+        Author baz = Author.create("baz");
+        baz.note = "";
+        db.insertIntoAuthor(baz);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        db.getConnection().getWritableDatabase().close();
+    }
+
+    static InputStream input(String s) {
+        return new ByteArrayInputStream(s.getBytes(UTF_8));
+    }
+
+    void assertRoundTrip(BulkIO.Format format) throws Exception {
+        List<Author> authors = db.selectFromAuthor().orderByNameAsc().toList();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(new BulkIO<>(db.relationOfAuthor()).exportTo(format, out), is(3L));
+
+        db.deleteFromAuthor().execute();
+        assertThat(new BulkIO<>(db.relationOfAuthor()).importFrom(format, new ByteArrayInputStream(out.toByteArray())),
+                is(3L));
+
+        List<Author> restored = db.selectFromAuthor().orderByNameAsc().toList();
+        assertThat(restored, is(authors));
+        assertThat(restored.get(0).note, is("line1\nline2"));
+        assertThat(restored.get(1).note, is(""));
+        assertThat(restored.get(2).note, is(nullValue()));
+    }
+
+    @Test
+    public void csvRoundTrip() throws Exception {
+        assertRoundTrip(BulkIO.Format.CSV);
+    }
+
+    @Test
+    public void jsonLinesRoundTrip() throws Exception {
+        assertRoundTrip(BulkIO.Format.JSON_LINES);
+    }
+
+    @Test
+    public void exportCsv() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BulkIO<>(db.relationOfAuthor().nameEq("foo")).exportTo(BulkIO.Format.CSV, out);
+        assertThat(new String(out.toByteArray(), UTF_8), is("note,name\r\n,foo\r\n"));
+    }
+
+    @Test
+    public void blobRoundTrip() throws Exception {
+        ModelWithBlob model = new ModelWithBlob();
+        model.blob = new byte[]{0, 1, 2, (byte) 0xff};
+        db.insertIntoModelWithBlob(model);
+
+        for (BulkIO.Format format : BulkIO.Format.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new BulkIO<>(db.relationOfModelWithBlob()).exportTo(format, out);
+            db.deleteFromModelWithBlob().execute();
+            new BulkIO<>(db.relationOfModelWithBlob()).importFrom(format, new ByteArrayInputStream(out.toByteArray()));
+            assertThat(db.selectFromModelWithBlob().value().blob, is(model.blob));
+        }
+    }
+
+    @Test
+    public void importWithConflictAlgorithm() throws Exception {
+        long count = new BulkIO<>(db.relationOfAuthor(), OnConflict.IGNORE).importFrom(BulkIO.Format.JSON_LINES,
+                input("{\"name\":\"foo\",\"note\":\"dup\"}\n{\"name\":\"qux\"}\n"));
+        assertThat(count, is(2L));
+        assertThat(db.selectFromAuthor().nameEq("foo").value().note, is(nullValue()));
+        assertThat(db.selectFromAuthor().nameEq("qux").value().note, is(nullValue()));
+    }
+
+    @Test
+    public void importKeepsCommittedChunks() throws Exception {
+        db.deleteFromAuthor().execute();
+        try {
+            // CHUNK_SIZE is 2 in debug builds
+            new BulkIO<>(db.relationOfAuthor()).importFrom(BulkIO.Format.CSV,
+                    input("name,note\r\na,\r\nb,\r\nc,\r\nd,\"unterminated\r\n"));
+            fail("not reached");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("Unterminated"));
+        }
+        assertThat(db.selectFromAuthor().count(), is(BulkIO.CHUNK_SIZE));
+    }
+
+    @Test(expected = InvalidStatementException.class)
+    public void importUnknownColumn() throws Exception {
+        new BulkIO<>(db.relationOfAuthor()).importFrom(BulkIO.Format.CSV, input("name,unknown\r\nfoo,bar\r\n"));
+    }
+}
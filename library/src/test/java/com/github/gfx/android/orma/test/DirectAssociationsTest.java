@@ -711,4 +711,53 @@ public class DirectAssociationsTest {
         assertThat(model.author.name, is(author1.name));
     }
 
+    @Test
+    public void testSelectColumns() throws Exception {
+        orma.insertIntoModelWithDirectAssociation(ModelWithDirectAssociation.create("foo", author1, publisher, "SQLite rocks"));
+
+        ModelWithDirectAssociation_Schema schema = ModelWithDirectAssociation_Schema.INSTANCE;
+
+        ModelWithDirectAssociation model = orma.selectFromModelWithDirectAssociation()
+                .select(schema.note, schema.author)
+                .value();
+        assertThat(model.name, is(nullValue()));
+        assertThat(model.note, is("SQLite rocks"));
+        assertThat(model.author.name, is(author1.name));
+        assertThat(model.author.note, is(author1.note));
+        assertThat(model.publisher, is(nullValue()));
+
+        model = orma.selectFromModelWithDirectAssociation()
+                .author(new Function1<Author_AssociationCondition, Author_AssociationCondition>() {
+                    @Override
+                    public Author_AssociationCondition apply(Author_AssociationCondition author) {
+                        return author.noteEq(author1.note);
+                    }
+                })
+                .select(schema.name)
+                .value();
+        assertThat(model.name, is("foo"));
+        assertThat(model.author, is(nullValue()));
+    }
+
+    @Test
+    public void testOmitUnusedJoins() throws Exception {
+        ModelWithDirectAssociation_Schema schema = ModelWithDirectAssociation_Schema.INSTANCE;
+
+        assertThat(orma.selectFromModelWithDirectAssociation().buildQuery(),
+                allOf(containsString("JOIN `Author`"), containsString("JOIN `publishers`")));
+        assertThat(orma.selectFromModelWithDirectAssociation().select(schema.name).buildQuery(),
+                not(containsString("JOIN")));
+        assertThat(orma.selectFromModelWithDirectAssociation().select(schema.note, schema.author).buildQuery(),
+                allOf(containsString("JOIN `Author`"), not(containsString("JOIN `publishers`"))));
+
+        ModelWithDirectAssociation_Selector selector = orma.selectFromModelWithDirectAssociation()
+                .author(new Function1<Author_AssociationCondition, Author_AssociationCondition>() {
+                    @Override
+                    public Author_AssociationCondition apply(Author_AssociationCondition author) {
+                        return author.noteEq(author1.note);
+                    }
+                })
+                .select(schema.name);
+        assertThat(selector.buildQuery(), allOf(containsString("JOIN `Author`"), not(containsString("JOIN `publishers`"))));
+    }
 }
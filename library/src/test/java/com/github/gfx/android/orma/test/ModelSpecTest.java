@@ -18,6 +18,8 @@ package com.github.gfx.android.orma.test;
 import com.github.gfx.android.orma.ModelFactory;
 import com.github.gfx.android.orma.test.model.Author;
 import com.github.gfx.android.orma.test.model.ModelWithBlob;
+import com.github.gfx.android.orma.test.model.ModelWithBlobStorageTypes;
+import com.github.gfx.android.orma.test.model.ModelWithBlob_Schema;
 import com.github.gfx.android.orma.test.model.ModelWithBoxTypes;
 import com.github.gfx.android.orma.test.model.ModelWithCollation;
 import com.github.gfx.android.orma.test.model.ModelWithConflictResolutions;
@@ -140,6 +142,23 @@ public class ModelSpecTest {
         assertThat(model.blob, is(new byte[]{0, 1, 2, 3}));
     }
 
+    @Test
+    public void testBlobInConditions() throws Exception {
+        ModelWithBlob model = new ModelWithBlob();
+        model.blob = new byte[]{0, 1, 2, 3};
+        db.insertIntoModelWithBlob(model);
+
+        model.blob = new byte[]{4, 5};
+        db.insertIntoModelWithBlob(model);
+
+        ModelWithBlob_Schema schema = ModelWithBlob_Schema.INSTANCE;
+        assertThat(db.selectFromModelWithBlob().where(schema.blob, "=", new byte[]{4, 5}).count(), is(1));
+        assertThat(db.selectFromModelWithBlob().where(schema.blob, "=", new byte[]{4, 5}).value().blob,
+                is(new byte[]{4, 5}));
+        assertThat(db.deleteFromModelWithBlob().where(schema.blob, "=", new byte[]{0, 1, 2, 3}).execute(), is(1));
+        assertThat(db.selectFromModelWithBlob().count(), is(1));
+    }
+
     @Test
     public void testModelWithTypeAdapters() throws Exception {
         final long now = System.currentTimeMillis();
@@ -202,6 +221,37 @@ public class ModelSpecTest {
         assertThat(model.nullableByteBuffer, is(nullValue())); // BLOB
     }
 
+    @Test
+    public void testModelWithBlobStorageTypes() throws Exception {
+        final UUID uuid = UUID.randomUUID();
+        final BigDecimal bd = new BigDecimal("-12345678901234567890.125");
+        final List<String> collection = Arrays.asList("foo", "", null, "\u3042\uD83C\uDF63");
+
+        ModelWithBlobStorageTypes model = db.createModelWithBlobStorageTypes(new ModelFactory<ModelWithBlobStorageTypes>() {
+            @NonNull
+            @Override
+            public ModelWithBlobStorageTypes call() {
+                ModelWithBlobStorageTypes model = new ModelWithBlobStorageTypes();
+                model.list = collection;
+                model.set = new HashSet<>(collection);
+                model.arrayList = new ArrayList<>(collection);
+                model.uuid = uuid;
+                model.bigDecimal = bd;
+                return model;
+            }
+        });
+
+        assertThat(model.list, contains(collection.toArray()));
+        assertThat(model.set, containsInAnyOrder(collection.toArray()));
+        assertThat(model.arrayList, contains(collection.toArray()));
+        assertThat(model.nullableLinkedHashSet, is(nullValue()));
+        assertThat(model.uuid, is(uuid));
+        assertThat(model.bigDecimal, is(bd));
+
+        assertThat(db.selectFromModelWithBlobStorageTypes().uuidEq(uuid).count(), is(1));
+        assertThat(db.selectFromModelWithBlobStorageTypes().uuidEq(UUID.randomUUID()).count(), is(0));
+    }
+
     @Test
     public void testModelWithTypeAdaptersUpdater() throws Exception {
         final long now = System.currentTimeMillis();
@@ -19,10 +19,13 @@ package com.github.gfx.android.orma.test;
 import com.github.gfx.android.orma.Inserter;
 import com.github.gfx.android.orma.ModelFactory;
 import com.github.gfx.android.orma.Relation;
+import com.github.gfx.android.orma.Selector;
+import com.github.gfx.android.orma.event.DataSetChangedEvent;
 import com.github.gfx.android.orma.test.model.Author;
 import com.github.gfx.android.orma.test.model.OrmaDatabase;
 import com.github.gfx.android.orma.test.toolbox.OrmaFactory;
 import com.github.gfx.android.orma.widget.OrmaAdapter;
+import com.github.gfx.android.orma.widget.OrmaIndexedAdapter;
 import com.github.gfx.android.orma.widget.OrmaListAdapter;
 import com.github.gfx.android.orma.widget.OrmaRecyclerViewAdapter;
 
@@ -39,7 +42,14 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.functions.Consumer;
 import io.reactivex.functions.Predicate;
+import io.reactivex.schedulers.Schedulers;
 
 import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.*;
@@ -104,7 +114,7 @@ public class OrmaAdapterTest {
         });
 
         adapter = new OrmaAdapter<>(getContext(),
-                db.relationOfAuthor().noteIsNotNull().orderByNameAsc());
+                db.relationOfAuthor().noteIsNotNull().orderByNameAsc(), Schedulers.trampoline());
     }
 
     @Test
@@ -240,4 +250,159 @@ public class OrmaAdapterTest {
         assertThat(listAdapter.getItem(0).name, is("A"));
         assertThat(listAdapter.getItem(0).note, is("foo/bar/baz"));
     }
+
+    @Test
+    public void testCheckEventsOffTheWriterThread() throws Exception {
+        final List<Thread> threads = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        adapter = new OrmaAdapter<Author>(getContext(), db.relationOfAuthor().noteIsNotNull().orderByNameAsc()) {
+            @Override
+            protected boolean onDataSetChanged(@NonNull DataSetChangedEvent<Selector<Author, ?>> event) {
+                threads.add(Thread.currentThread());
+                return super.onDataSetChanged(event);
+            }
+
+            @Override
+            protected void evictChangedItems(@NonNull DataSetChangedEvent<Selector<Author, ?>> event) {
+                threads.add(Thread.currentThread());
+                super.evictChangedItems(event);
+                latch.countDown();
+            }
+        };
+
+        adapter.getItem(0); // to touch the cache
+        db.updateAuthor().nameEq("A").note("foo2").execute();
+
+        assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(adapter.getItem(0).note, is("foo2"));
+        assertThat(threads, contains(not(Thread.currentThread()), not(Thread.currentThread())));
+    }
+
+    @Test
+    public void testKeepCachedItemsForUnrelatedChanges() throws Exception {
+        Author a = adapter.getItem(0);
+        Author b = adapter.getItem(1);
+
+        db.updateAuthor().nameEq("Z").name("Y").execute(); // out of the relation
+        assertThat(adapter.getItem(0), is(sameInstance(a)));
+        assertThat(adapter.getItem(1), is(sameInstance(b)));
+
+        db.updateAuthor().nameEq("B").note("bar2").execute(); // only B is changed
+        assertThat(adapter.getItem(0), is(sameInstance(a)));
+        assertThat(adapter.getItem(1), is(not(sameInstance(b))));
+        assertThat(adapter.getItem(1).note, is("bar2"));
+
+        b = adapter.getItem(1);
+        db.updateAuthor().nameEq("A").name("D").execute(); // A moves to the end
+        assertThat(adapter.getItem(0).name, is("B"));
+        assertThat(adapter.getItem(0), is(not(sameInstance(b))));
+    }
+
+    @Test
+    public void testIgnoreChangesOutOfRelation() throws Exception {
+        final List<String> events = new ArrayList<>();
+        adapter.getQueryObservable().subscribe(new Consumer<Selector<Author, ?>>() {
+            @Override
+            public void accept(Selector<Author, ?> selector) throws Exception {
+                events.add(selector.toString());
+            }
+        });
+
+        db.updateAuthor().nameEq("A").note("foo2").execute();
+        assertThat("the first event is always delivered", events, hasSize(1));
+
+        db.insertIntoAuthor(Author.create("Y"));
+        db.updateAuthor().nameEq("Y").note(null).execute();
+        db.deleteFromAuthor().nameEq("Y").execute();
+        assertThat("changes out of the relation", events, hasSize(1));
+
+        adapter.getItem(0);
+        db.updateAuthor().nameEq("Z").note("qux").execute();
+        assertThat("a row enters the relation", events, hasSize(2));
+        assertThat(adapter.getItem(3).name, is("Z"));
+
+        db.updateAuthor().nameEq("A").note(null).execute();
+        assertThat("a row leaves the relation", events, hasSize(3));
+        assertThat(adapter.getItem(0).name, is("B"));
+
+        db.updateAuthor().nameEq("B").note("bar2").execute();
+        assertThat("a row in the relation is updated", events, hasSize(4));
+        assertThat(adapter.getItem(0).note, is("bar2"));
+    }
+
+    @Test
+    public void testIndexedAdapter() throws Exception {
+        OrmaIndexedAdapter<Author> indexedAdapter = new OrmaIndexedAdapter<>(getContext(),
+                db.relationOfAuthor().noteIsNotNull().orderByNameAsc(), Schedulers.trampoline());
+
+        assertThat(indexedAdapter.getItemCount(), is(3));
+        assertThat(indexedAdapter.getItem(0).name, is("A"));
+        assertThat(indexedAdapter.getItem(1).name, is("B"));
+        assertThat(indexedAdapter.getItem(2).name, is("C"));
+        long idOfA = indexedAdapter.getItemId(0);
+
+        db.insertIntoAuthor(Author.create("Y")); // out of the relation
+        OrmaIndexedAdapter.IndexUpdate update = indexedAdapter.computeIndexUpdate();
+        assertThat(update.changedRowIds, is(empty()));
+        assertThat(indexedAdapter.applyIndexUpdate(update), is(true));
+
+        db.updateAuthor().nameEq("A").note("foo2").execute();
+        long idOfD = db.insertIntoAuthor(Author.create("D"));
+        db.updateAuthor().nameEq("D").note("new").execute();
+        db.deleteFromAuthor().nameEq("B").execute();
+
+        update = indexedAdapter.computeIndexUpdate();
+        assertThat(update.newRowIds.length, is(3));
+        assertThat(update.isChanged(idOfA), is(true));
+        assertThat(update.isChanged(indexedAdapter.getItemId(2)), is(false));
+        assertThat(update.isChanged(idOfD), is(true));
+
+        assertThat(indexedAdapter.applyIndexUpdate(update), is(true));
+        assertThat(indexedAdapter.getItemCount(), is(3));
+        assertThat(indexedAdapter.getItem(0).note, is("foo2"));
+        assertThat(indexedAdapter.getItem(1).name, is("C"));
+        assertThat(indexedAdapter.getItem(2).name, is("D"));
+    }
+
+    @Test
+    public void testIndexedAdapterPatchesIndex() throws Exception {
+        OrmaIndexedAdapter<Author> indexedAdapter = new OrmaIndexedAdapter<>(getContext(),
+                db.relationOfAuthor().noteIsNotNull().orderByNameAsc(), Schedulers.trampoline());
+        assertThat(indexedAdapter.getItemCount(), is(3));
+        long idOfB = indexedAdapter.getItemId(1);
+
+        db.updateAuthor().nameEq("B").note("bar2").execute();
+        OrmaIndexedAdapter.IndexUpdate update = indexedAdapter.computeIndexUpdate();
+        assertThat(update.isPatched(), is(true));
+        assertThat(update.removedPositions, is(new int[]{1}));
+        assertThat(update.insertedPositions, is(new int[]{1}));
+        assertThat(update.newRowIds, is(update.oldRowIds));
+        assertThat(indexedAdapter.applyIndexUpdate(update), is(true));
+        assertThat(indexedAdapter.getItem(1).note, is("bar2"));
+
+        Author ab = Author.create("AB");
+        ab.note = "new";
+        long idOfAB = db.insertIntoAuthor(ab);
+        update = indexedAdapter.computeIndexUpdate();
+        assertThat(update.isPatched(), is(true));
+        assertThat(update.removedPositions, is(new int[0]));
+        assertThat(update.insertedPositions, is(new int[]{1}));
+        assertThat(indexedAdapter.applyIndexUpdate(update), is(true));
+        assertThat(indexedAdapter.getItemId(1), is(idOfAB));
+        assertThat(indexedAdapter.getItemId(2), is(idOfB));
+
+        db.deleteFromAuthor().nameEq("A").execute();
+        db.updateAuthor().nameEq("Z").note("moved").execute(); // enters the relation at the end
+        update = indexedAdapter.computeIndexUpdate();
+        assertThat(update.isPatched(), is(true));
+        assertThat(update.removedPositions, is(new int[]{0}));
+        assertThat(update.insertedPositions, is(new int[]{3}));
+        assertThat(indexedAdapter.applyIndexUpdate(update), is(true));
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < indexedAdapter.getItemCount(); i++) {
+            names.add(indexedAdapter.getItem(i).name);
+        }
+        assertThat(names, contains("AB", "B", "C", "Z"));
+    }
 }
@@ -16,8 +16,15 @@
 package com.github.gfx.android.orma.test;
 
 import com.github.gfx.android.orma.AccessThreadConstraint;
+import com.github.gfx.android.orma.Inserter;
 import com.github.gfx.android.orma.ModelFactory;
+import com.github.gfx.android.orma.OrmaConnection;
+import com.github.gfx.android.orma.StatementCache;
+import com.github.gfx.android.orma.WriteQueue;
 import com.github.gfx.android.orma.core.Database;
+import com.github.gfx.android.orma.core.DatabaseStatement;
+import com.github.gfx.android.orma.migration.MigrationEngine;
+import com.github.gfx.android.orma.migration.TraceListener;
 import com.github.gfx.android.orma.test.database_package_test.OrmaDatabaseInAnotherPackage;
 import com.github.gfx.android.orma.test.model.Author;
 import com.github.gfx.android.orma.test.model.OrmaDatabase;
@@ -34,8 +41,22 @@ import android.support.annotation.NonNull;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Completable;
+
 import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
 
 @RunWith(AndroidJUnit4.class)
 public class OrmaDatabaseTest {
@@ -152,6 +173,306 @@ public class OrmaDatabaseTest {
         assertThat(isForeignKeyEnabled(db), is(false));
     }
 
+    @Test
+    public void testStatementCache() throws Exception {
+        OrmaDatabase db = OrmaDatabase.builder(getContext())
+                .name(NAME)
+                .statementCacheSize(2)
+                .tryParsingSql(false)
+                .build();
+
+        StatementCache cache = db.getConnection().getStatementCache();
+        assertThat(cache.maxSize(), is(2));
+
+        db.insertIntoAuthor(Author.create("foo"));
+        db.insertIntoAuthor(Author.create("bar"));
+        assertThat(cache.missCount(), is(1L));
+        assertThat(cache.hitCount(), is(1L));
+        assertThat(cache.size(), is(1));
+
+        assertThat(db.selectFromAuthor().nameEq("foo").count(), is(1));
+        assertThat(db.selectFromAuthor().nameEq("bar").count(), is(1));
+        assertThat(cache.missCount(), is(2L));
+        assertThat(cache.hitCount(), is(2L));
+
+        assertThat(db.updateAuthor().nameEq("foo").note("note").execute(), is(1));
+        assertThat(db.deleteFromAuthor().nameEq("bar").execute(), is(1));
+        assertThat("evicted", cache.size(), is(2));
+
+        assertThat(db.selectFromAuthor().noteEq("note").count(), is(1));
+        assertThat(db.selectFromAuthor().count(), is(1));
+    }
+
+    @Test
+    public void testStatementCacheClosed() throws Exception {
+        OrmaDatabase db = OrmaDatabase.builder(getContext())
+                .name(NAME)
+                .tryParsingSql(false)
+                .build();
+
+        Inserter<Author> inserter = db.prepareInsertIntoAuthor();
+        inserter.execute(Author.create("foo"));
+        inserter.close();
+        try {
+            inserter.execute(Author.create("bar"));
+            fail("not reached");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("closed"));
+        }
+        inserter.close(); // no-op
+
+        StatementCache cache = db.getConnection().getStatementCache();
+        DatabaseStatement statement = cache.acquire(db.getConnection().getWritableDatabase(), "SELECT 1");
+        cache.close();
+        assertThat(cache.size(), is(0));
+        cache.release("SELECT 1", statement);
+        assertThat("a statement released after close() is not cached", cache.size(), is(0));
+    }
+
+    @Test
+    public void testStatementCacheDisabled() throws Exception {
+        OrmaDatabase db = OrmaDatabase.builder(getContext())
+                .name(NAME)
+                .statementCacheSize(0)
+                .tryParsingSql(false)
+                .build();
+
+        db.insertIntoAuthor(Author.create("foo"));
+        db.insertIntoAuthor(Author.create("bar"));
+
+        StatementCache cache = db.getConnection().getStatementCache();
+        assertThat(cache.size(), is(0));
+        assertThat(cache.hitCount(), is(0L));
+        assertThat(db.selectFromAuthor().count(), is(2));
+    }
+
+    @Test
+    public void testGetDatabaseWithoutLockAfterMigration() throws Exception {
+        OrmaDatabase db = OrmaDatabase.builder(getContext())
+                .name(NAME)
+                .tryParsingSql(false)
+                .build();
+
+        final OrmaConnection conn = db.getConnection();
+        conn.getWritableDatabase(); // runs the migration
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        synchronized (conn) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    conn.getReadableDatabase();
+                    conn.getWritableDatabase();
+                    latch.countDown();
+                }
+            }).start();
+            assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+        }
+    }
+
+    @Test
+    public void testMigrateInBackground() throws Exception {
+        final List<String> traces = Collections.synchronizedList(new ArrayList<String>());
+        OrmaDatabase db = OrmaDatabase.builder(getContext())
+                .name(NAME)
+                .tryParsingSql(false)
+                .migrationTraceListener(new TraceListener() {
+                    @Override
+                    public void onTrace(@NonNull MigrationEngine engine, @NonNull String format,
+                            @NonNull Object[] args) {
+                        traces.add(String.format(format, args));
+                    }
+                })
+                .migrateInBackground(true)
+                .build();
+
+        Future<Void> future = db.getConnection().startMigrationInBackground();
+        assertThat(db.getConnection().startMigrationInBackground(), is(sameInstance(future)));
+        future.get(5, TimeUnit.SECONDS);
+
+        assertThat(traces, hasItem("migration started in Orma-Migration"));
+        assertThat(traces, hasItem(startsWith("migration finished in ")));
+        assertThat(db.selectFromAuthor().count(), is(0));
+    }
+
+    @Test
+    public void testTryParsingSqlParsesOnlyChangedSchemas() throws Exception {
+        final List<String> traces = Collections.synchronizedList(new ArrayList<String>());
+        TraceListener traceListener = new TraceListener() {
+            @Override
+            public void onTrace(@NonNull MigrationEngine engine, @NonNull String format,
+                    @NonNull Object[] args) {
+                traces.add(String.format(format, args));
+            }
+        };
+        OrmaDatabase db = OrmaDatabase.builder(getContext())
+                .name(NAME)
+                .tryParsingSql(true)
+                .migrationTraceListener(traceListener)
+                .build();
+        db.selectFromAuthor().count();
+        int n = db.getConnection().getSchemas().size();
+        assertThat(traces, hasItem("parsed " + n + " of " + n + " schemas"));
+        db.getConnection().close();
+
+        traces.clear();
+        db = OrmaDatabase.builder(getContext())
+                .name(NAME)
+                .tryParsingSql(true)
+                .migrationTraceListener(traceListener)
+                .build();
+        db.selectFromAuthor().count();
+        assertThat(traces, hasItem("parsed 0 of " + n + " schemas"));
+    }
+
+    @Test
+    public void testMigrationAsCompletableIsLazy() throws Exception {
+        final List<String> traces = Collections.synchronizedList(new ArrayList<String>());
+        OrmaDatabase db = OrmaDatabase.builder(getContext())
+                .name(NAME)
+                .tryParsingSql(false)
+                .migrationTraceListener(new TraceListener() {
+                    @Override
+                    public void onTrace(@NonNull MigrationEngine engine, @NonNull String format,
+                            @NonNull Object[] args) {
+                        traces.add(String.format(format, args));
+                    }
+                })
+                .build();
+
+        Completable migration = db.getConnection().migrationAsCompletable();
+        Thread.sleep(100);
+        assertThat(traces, not(hasItem("migration started in Orma-Migration")));
+
+        migration.blockingAwait(5, TimeUnit.SECONDS);
+        assertThat(traces, hasItem("migration started in Orma-Migration"));
+    }
+
+    @Test
+    public void testWriteQueue() throws Exception {
+        final OrmaDatabase db = OrmaDatabase.builder(getContext())
+                .name(NAME)
+                .writeQueueBatchSize(4)
+                .writeQueueDelayMillis(1000)
+                .tryParsingSql(false)
+                .build();
+
+        WriteQueue queue = db.getConnection().getWriteQueue();
+        assertThat(db.getConnection().getWriteQueue(), is(sameInstance(queue)));
+
+        List<Future<Long>> futures = new ArrayList<>();
+        final AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            final String name = "author" + i;
+            futures.add(queue.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    calls.incrementAndGet();
+                    long rowId = db.insertIntoAuthor(Author.create(name));
+                    if (name.equals("author3")) {
+                        throw new IllegalArgumentException(name);
+                    }
+                    return rowId;
+                }
+            }));
+        }
+        queue.flush();
+
+        for (int i = 0; i < futures.size(); i++) {
+            Future<Long> future = futures.get(i);
+            assertThat("only the writer thread runs tasks", future, is(not(instanceOf(Runnable.class))));
+            assertThat(future.isDone(), is(true));
+            if (i == 3) {
+                try {
+                    future.get();
+                    fail("not reached");
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause(), is(instanceOf(IllegalArgumentException.class)));
+                }
+            } else {
+                assertThat(future.get(), is(greaterThan(0L)));
+            }
+        }
+
+        assertThat("the failed task is rolled back", db.selectFromAuthor().nameEq("author3").count(), is(0));
+        assertThat(db.selectFromAuthor().count(), is(9));
+        assertThat("each task runs exactly once", calls.get(), is(10));
+    }
+
+    @Test
+    public void testWriteQueueClose() throws Exception {
+        final OrmaDatabase db = OrmaDatabase.builder(getContext())
+                .name(NAME)
+                .writeQueueDelayMillis(1000)
+                .tryParsingSql(false)
+                .build();
+
+        WriteQueue queue = db.getConnection().getWriteQueue();
+        Future<Void> future = queue.submit(new Runnable() {
+            @Override
+            public void run() {
+                db.insertIntoAuthor(Author.create("foo"));
+            }
+        });
+        queue.close();
+
+        assertThat("committed without waiting for the delay", future.isDone(), is(true));
+        assertThat(db.selectFromAuthor().count(), is(1));
+
+        try {
+            queue.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail("not reached");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("closed"));
+        }
+    }
+
+    @Test
+    public void testWriteQueueInterrupted() throws Exception {
+        final OrmaDatabase db = OrmaDatabase.builder(getContext())
+                .name(NAME)
+                .writeQueueDelayMillis(0)
+                .tryParsingSql(false)
+                .build();
+
+        WriteQueue queue = db.getConnection().getWriteQueue();
+        queue.submit(new Runnable() {
+            @Override
+            public void run() {
+                Thread.currentThread().interrupt();
+            }
+        }).get();
+
+        try {
+            Future<Void> future = queue.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            future.get(5, TimeUnit.SECONDS);
+            fail("not reached");
+        } catch (CancellationException e) {
+            // queued before the writer thread stopped
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("closed"));
+        }
+
+        try {
+            queue.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail("not reached");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("closed"));
+        }
+    }
+
     boolean isForeignKeyEnabled(OrmaDatabase orma) {
         Database db = orma.getConnection().getReadableDatabase();
         return db.longForQuery("PRAGMA foreign_keys", null) != 0;
@@ -20,6 +20,8 @@ import com.github.gfx.android.orma.event.DataSetChangedEvent;
 import com.github.gfx.android.orma.test.model.Author;
 import com.github.gfx.android.orma.test.model.Author_Selector;
 import com.github.gfx.android.orma.test.model.OrmaDatabase;
+import com.github.gfx.android.orma.test.model.Publisher;
+import com.github.gfx.android.orma.test.model.PublisherSelector;
 import com.github.gfx.android.orma.test.toolbox.OrmaFactory;
 import com.github.gfx.android.orma.test.toolbox.TestUtils;
 
@@ -30,12 +32,15 @@ import org.junit.runner.RunWith;
 import android.support.test.runner.AndroidJUnit4;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Observable;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.functions.Consumer;
 import io.reactivex.functions.Function;
+import io.reactivex.schedulers.TestScheduler;
 
 import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.*;
@@ -184,4 +189,222 @@ public class QueryObservableTest {
         assertThat(result, contains(DataSetChangedEvent.Type.TRANSACTION));
     }
 
+    @Test
+    public void rowIds() throws Exception {
+        final List<DataSetChangedEvent<Author_Selector>> events = new ArrayList<>();
+        Disposable subscription = db.relationOfAuthor().<Author_Selector>createEventObservable()
+                .subscribe(new Consumer<DataSetChangedEvent<Author_Selector>>() {
+                    @Override
+                    public void accept(DataSetChangedEvent<Author_Selector> event) throws Exception {
+                        events.add(event);
+                    }
+                });
+
+        final long rowId = db.insertIntoAuthor(Author.create("bar"));
+        assertThat(events, hasSize(1));
+        assertThat(events.get(0).getRowIds(), is(new long[]{rowId}));
+        assertThat(events.get(0).selectChangedRows().value().name, is("bar"));
+
+        events.clear();
+        db.updateAuthor().nameEq("bar").note("note").execute();
+        assertThat(events.get(0).getType(), is(DataSetChangedEvent.Type.UPDATE));
+        assertThat(events.get(0).getRowIds(), is(new long[]{rowId}));
+        assertThat(events.get(0).mayAffect(rowId), is(true));
+        assertThat(events.get(0).mayAffect(rowId + 1), is(false));
+        assertThat(events.get(0).selectChangedRows().noteEq("note").count(), is(1));
+        assertThat(events.get(0).selectChangedRows().noteEq("other").count(), is(0));
+
+        events.clear();
+        db.updateAuthor().nameEq("nobody").note("note").execute();
+        assertThat(events.get(0).getRowIds(), is(new long[0]));
+        assertThat(events.get(0).selectChangedRows().isEmpty(), is(true));
+
+        events.clear();
+        final long[] rowIds = new long[2];
+        db.transactionSync(new Runnable() {
+            @Override
+            public void run() {
+                rowIds[0] = db.insertIntoAuthor(Author.create("baz"));
+                db.deleteFromAuthor().nameEq("foo").execute();
+                db.updateAuthor().nameEq("baz").note("note").execute();
+            }
+        });
+        rowIds[1] = 1; // "foo" in setUp()
+        Arrays.sort(rowIds);
+        assertThat(events, hasSize(1));
+        assertThat(events.get(0).getType(), is(DataSetChangedEvent.Type.TRANSACTION));
+        assertThat(events.get(0).getRowIds(), is(rowIds));
+
+        events.clear();
+        db.prepareInsertIntoAuthor().executeAllInBatch(Arrays.asList(Author.create("a"), Author.create("b")));
+        assertThat("unknown for multi-row INSERT", events.get(0).hasRowIds(), is(false));
+        assertThat(events.get(0).selectChangedRows().count(), is(db.selectFromAuthor().count()));
+
+        subscription.dispose();
+    }
+
+    @Test
+    public void observersForEachTable() throws Exception {
+        final List<DataSetChangedEvent<?>> authorEvents = new ArrayList<>();
+        final List<DataSetChangedEvent<?>> publisherEvents = new ArrayList<>();
+        Disposable authorSubscription = db.relationOfAuthor().<Author_Selector>createEventObservable()
+                .subscribe(new Consumer<DataSetChangedEvent<Author_Selector>>() {
+                    @Override
+                    public void accept(DataSetChangedEvent<Author_Selector> event) throws Exception {
+                        authorEvents.add(event);
+                    }
+                });
+        Disposable publisherSubscription = db.relationOfPublisher().<PublisherSelector>createEventObservable()
+                .subscribe(new Consumer<DataSetChangedEvent<PublisherSelector>>() {
+                    @Override
+                    public void accept(DataSetChangedEvent<PublisherSelector> event) throws Exception {
+                        publisherEvents.add(event);
+                    }
+                });
+
+        db.insertIntoAuthor(Author.create("bar"));
+        assertThat(authorEvents, hasSize(1));
+        assertThat(publisherEvents, is(empty()));
+
+        db.insertIntoPublisher(Publisher.create("The Fellowship of the Ring", 1954, 7));
+        assertThat(authorEvents, hasSize(1));
+        assertThat(publisherEvents, hasSize(1));
+
+        db.prepareInsertIntoAuthor().executeAllInBatch(Arrays.asList(Author.create("a"), Author.create("b")));
+        db.prepareInsertIntoAuthor().executeAllInBatch(Arrays.asList(Author.create("c"), Author.create("d")));
+        assertThat(authorEvents, hasSize(3));
+        assertThat("events without row ids are reused", authorEvents.get(2), is(sameInstance(authorEvents.get(1))));
+
+        authorSubscription.dispose();
+        publisherSubscription.dispose();
+    }
+
+    @Test
+    public void transactionsInThreads() throws Exception {
+        final List<DataSetChangedEvent<?>> events = new ArrayList<>();
+        Disposable subscription = db.relationOfAuthor().<Author_Selector>createEventObservable()
+                .subscribe(new Consumer<DataSetChangedEvent<Author_Selector>>() {
+                    @Override
+                    public void accept(DataSetChangedEvent<Author_Selector> event) throws Exception {
+                        synchronized (events) {
+                            events.add(event);
+                        }
+                    }
+                });
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final String name = "thread" + i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    db.transactionSync(new Runnable() {
+                        @Override
+                        public void run() {
+                            db.insertIntoAuthor(Author.create(name));
+                        }
+                    });
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(events, hasSize(threads.length));
+        for (DataSetChangedEvent<?> event : events) {
+            assertThat(event.getType(), is(DataSetChangedEvent.Type.TRANSACTION));
+            assertThat(event.getRowIds().length, is(1));
+        }
+
+        subscription.dispose();
+    }
+
+    @Test
+    public void debounce() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        final List<Integer> counts = new ArrayList<>();
+        Disposable subscription = db.relationOfAuthor()
+                .<Author_Selector>createQueryObservable(100, 10000, TimeUnit.MILLISECONDS, scheduler)
+                .subscribe(new Consumer<Author_Selector>() {
+                    @Override
+                    public void accept(Author_Selector selector) throws Exception {
+                        counts.add(selector.count());
+                    }
+                });
+
+        for (int i = 0; i < 100; i++) {
+            db.insertIntoAuthor(Author.create("author" + i));
+            scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        }
+        assertThat(counts, is(empty()));
+
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        assertThat(counts, contains(101));
+
+        db.insertIntoAuthor(Author.create("bar"));
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        assertThat(counts, contains(101, 102));
+
+        subscription.dispose();
+    }
+
+    @Test
+    public void debounceWithMaxLatency() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        final List<Integer> counts = new ArrayList<>();
+        Disposable subscription = db.relationOfAuthor()
+                .<Author_Selector>createQueryObservable(100, TimeUnit.MILLISECONDS, scheduler)
+                .subscribe(new Consumer<Author_Selector>() {
+                    @Override
+                    public void accept(Author_Selector selector) throws Exception {
+                        counts.add(selector.count());
+                    }
+                });
+
+        // a sustained stream of writes, which never pauses for the timeout
+        for (int i = 0; i < 250; i++) {
+            db.insertIntoAuthor(Author.create("author" + i));
+            scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        }
+        assertThat(counts, contains(101, 201));
+
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        assertThat(counts, contains(101, 201, 251));
+
+        scheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+        assertThat(counts, contains(101, 201, 251));
+
+        subscription.dispose();
+    }
+
+    @Test
+    public void coalescedEventObservable() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        final List<DataSetChangedEvent<Author_Selector>> events = new ArrayList<>();
+        Disposable subscription = db.relationOfAuthor()
+                .<Author_Selector>createEventObservable(100, 1000, TimeUnit.MILLISECONDS, scheduler)
+                .subscribe(new Consumer<DataSetChangedEvent<Author_Selector>>() {
+                    @Override
+                    public void accept(DataSetChangedEvent<Author_Selector> event) throws Exception {
+                        events.add(event);
+                    }
+                });
+
+        long a = db.insertIntoAuthor(Author.create("a"));
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        long b = db.insertIntoAuthor(Author.create("b"));
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        db.updateAuthor().nameEq("a").note("updated").execute();
+        assertThat(events, is(empty()));
+
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        assertThat(events, hasSize(1));
+        assertThat(events.get(0).getType(), is(DataSetChangedEvent.Type.TRANSACTION));
+        assertThat(events.get(0).getRowIds(), is(new long[]{a, b}));
+        assertThat(events.get(0).selectChangedRows().count(), is(2));
+
+        subscription.dispose();
+    }
 }
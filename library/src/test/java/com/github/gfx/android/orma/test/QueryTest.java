@@ -15,12 +15,16 @@
  */
 package com.github.gfx.android.orma.test;
 
+import com.github.gfx.android.orma.ChunkListener;
+import com.github.gfx.android.orma.IdentityMap;
 import com.github.gfx.android.orma.Inserter;
 import com.github.gfx.android.orma.ModelFactory;
+import com.github.gfx.android.orma.PreparedSelector;
 import com.github.gfx.android.orma.SingleAssociation;
 import com.github.gfx.android.orma.annotation.OnConflict;
 import com.github.gfx.android.orma.exception.InvalidStatementException;
 import com.github.gfx.android.orma.exception.NoValueException;
+import com.github.gfx.android.orma.function.Consumer;
 import com.github.gfx.android.orma.function.Function1;
 import com.github.gfx.android.orma.test.model.Author;
 import com.github.gfx.android.orma.test.model.Author_Selector;
@@ -41,7 +45,9 @@ import android.database.sqlite.SQLiteException;
 import android.support.annotation.NonNull;
 import android.support.test.runner.AndroidJUnit4;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -104,6 +110,14 @@ public class QueryTest {
         assertThat(db.selectFromBook().count(), is(2));
     }
 
+    @Test
+    public void whereWithBigDecimal() throws Exception {
+        Book_Selector selector = db.selectFromBook().where("price < ?", new BigDecimal("100.5"));
+
+        assertThat(selector.count(), is(1));
+        assertThat(selector.value().title, is("friday"));
+    }
+
     @Test
     public void empty() throws Exception {
         assertThat(db.selectFromBook().isEmpty(), is(false));
@@ -507,6 +521,312 @@ public class QueryTest {
         }
     }
 
+    @Test
+    public void keysetIterator() throws Exception {
+        Book_Schema schema = Book_Schema.INSTANCE;
+
+        for (int i = 0; i < 10; i++) {
+            Book book = new Book();
+            book.title = "name #" + i;
+            book.content = i % 3 == 0 ? null : "blah blah blah #" + i;
+            book.price = i % 4;
+            book.publisher = SingleAssociation.just(publisher);
+
+            db.insertIntoBook(book);
+        }
+
+        assertThat(titles(IteratorUtils.listFromIterator(db.selectFromBook().keysetIterator())),
+                is(titles(db.selectFromBook().toList())));
+
+        assertThat(titles(IteratorUtils.listFromIterator(
+                db.selectFromBook().orderByPriceAsc().keysetIterator())),
+                is(titles(db.selectFromBook().orderByPriceAsc().orderBy(schema.bookId.orderInAscending()).toList())));
+
+        assertThat(titles(IteratorUtils.listFromIterator(
+                db.selectFromBook().orderByPriceDesc().orderByTitleAsc().keysetIterator())),
+                is(titles(db.selectFromBook().orderByPriceDesc().orderByTitleAsc().toList())));
+
+        assertThat(titles(IteratorUtils.listFromIterator(
+                db.selectFromBook().orderBy(schema.content.orderInAscending()).keysetIterator())),
+                is(titles(db.selectFromBook().orderBy(schema.content.orderInAscending()).orderBy(schema.bookId.orderInAscending()).toList())));
+
+        assertThat(titles(IteratorUtils.listFromIterator(
+                db.selectFromBook().orderBy(schema.content.orderInDescending()).keysetIterator())),
+                is(titles(db.selectFromBook().orderBy(schema.content.orderInDescending()).orderBy(schema.bookId.orderInAscending()).toList())));
+
+        assertThat(titles(IteratorUtils.listFromIterator(
+                db.relationOfBook().orderByPriceDesc().keysetIterator())),
+                is(titles(db.selectFromBook().orderByPriceDesc().orderBy(schema.bookId.orderInAscending()).toList())));
+
+        assertThat(titles(IteratorUtils.listFromIterator(
+                db.selectFromBook().priceEq(1).or().priceEq(2).orderByTitleDesc().keysetIterator())),
+                is(titles(db.selectFromBook().priceEq(1).or().priceEq(2).orderByTitleDesc().toList())));
+
+        assertThat(titles(IteratorUtils.listFromIterator(
+                db.selectFromBook().orderByPriceAsc().limit(5).offset(3).keysetIterator())),
+                is(titles(db.selectFromBook().orderByPriceAsc().orderBy(schema.bookId.orderInAscending()).limit(5).offset(3).toList())));
+    }
+
+    @Test
+    public void keysetIteratorWithInsertionsDuringIteration() throws Exception {
+        Book_Schema schema = Book_Schema.INSTANCE;
+        Iterator<Book> iterator = db.selectFromBook().orderBy(schema.bookId.orderInAscending()).keysetIterator();
+        List<String> titles = new ArrayList<>();
+        while (iterator.hasNext()) {
+            Book book = iterator.next();
+            titles.add(book.title);
+            if (titles.size() <= 3) {
+                db.insertIntoBook(Book.create("new #" + titles.size(), publisher));
+            }
+        }
+        assertThat(titles, contains("today", "friday", "new #1", "new #2", "new #3"));
+    }
+
+    @Test(expected = InvalidStatementException.class)
+    public void keysetIteratorWithRawOrderingTerms() throws Exception {
+        db.selectFromBook().orderBy("title").keysetIterator();
+    }
+
+    @Test
+    public void forEachRow() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            db.insertIntoBook(Book.create("name #" + i, publisher));
+        }
+
+        final List<String> titles = new ArrayList<>();
+        db.selectFromBook().orderByTitleAsc().forEachRow(new Consumer<Book>() {
+            @Override
+            public void accept(Book book) {
+                titles.add(book.title);
+            }
+        });
+        assertThat(titles, is(titles(db.selectFromBook().orderByTitleAsc().toList())));
+
+        // falls back to a single cursor
+        titles.clear();
+        db.selectFromBook().orderBy("title DESC").forEachRow(new Consumer<Book>() {
+            @Override
+            public void accept(Book book) {
+                titles.add(book.title);
+            }
+        });
+        assertThat(titles, is(titles(db.selectFromBook().orderByTitleDesc().toList())));
+    }
+
+    @Test
+    public void forEachRowWithReusedModel() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            db.insertIntoBook(Book.create("name #" + i, publisher));
+        }
+
+        final Book reuse = new Book();
+        final List<String> titles = new ArrayList<>();
+        final List<Book> books = new ArrayList<>();
+        db.relationOfBook().forEachRow(reuse, new Consumer<Book>() {
+            @Override
+            public void accept(Book book) {
+                titles.add(book.title);
+                books.add(book);
+            }
+        });
+        assertThat(titles, is(titles(db.selectFromBook().toList())));
+        for (Book book : books) {
+            assertThat(book, is(sameInstance(reuse)));
+        }
+        assertThat(reuse.title, is("name #4"));
+        assertThat(reuse.publisher.getId(), is(publisher.id));
+    }
+
+    @Test
+    public void prefetchSingleAssociations() throws Exception {
+        Publisher other = db.relationOfPublisher().upsert(Publisher.create("baz", 2016, 1));
+        for (int i = 0; i < 5; i++) {
+            db.insertIntoBook(Book.create("name #" + i, i % 2 == 0 ? publisher : other));
+        }
+
+        Book_Selector selector = db.selectFromBook().orderByTitleAsc();
+        List<Book> lazyBooks = selector.toList();
+        List<Book> prefetchedBooks = selector.clone().prefetch(Book_Schema.INSTANCE.publisher).toList();
+        Iterator<Book> iterator = selector.clone().prefetch(Book_Schema.INSTANCE.publisher).iterator();
+        Iterator<Book> keysetIterator = selector.clone().prefetch(Book_Schema.INSTANCE.publisher).keysetIterator();
+        assertThat(prefetchedBooks, hasSize(7));
+        // iterators prefetch associations when a page is read
+        assertThat(iterator.hasNext(), is(true));
+        assertThat(keysetIterator.hasNext(), is(true));
+
+        // prefetched models are not affected by changes after the query, while lazy ones are
+        db.updatePublisher().startedYear(2000).execute();
+
+        for (int i = 0; i < prefetchedBooks.size(); i++) {
+            Book lazy = lazyBooks.get(i);
+            Book prefetched = prefetchedBooks.get(i);
+            assertThat(prefetched.publisher.getId(), is(lazy.publisher.getId()));
+            assertThat(lazy.publisher.get().startedYear, is(2000));
+            assertThat(prefetched.publisher.get().startedYear, is(not(2000)));
+            assertThat(prefetched.publisher.get().name, is(lazy.publisher.get().name));
+        }
+
+        assertThat(iterator.next().publisher.get().startedYear, is(not(2000)));
+        assertThat(keysetIterator.next().publisher.get().startedYear, is(not(2000)));
+    }
+
+    @Test
+    public void prefetchSingleAssociationsForEachPage() throws Exception {
+        Publisher other = db.relationOfPublisher().upsert(Publisher.create("baz", 2016, 1));
+        for (int i = 0; i < 5; i++) {
+            db.insertIntoBook(Book.create("name #" + i, i % 2 == 0 ? publisher : other));
+        }
+
+        final List<String> names = new ArrayList<>();
+        db.selectFromBook()
+                .orderByTitleAsc()
+                .prefetch(Book_Schema.INSTANCE.publisher)
+                .forEachRow(new Consumer<Book>() {
+                    @Override
+                    public void accept(Book book) {
+                        names.add(book.publisher.get().name);
+                    }
+                });
+        assertThat(names, hasSize(7));
+
+        List<String> expected = new ArrayList<>();
+        for (Book book : db.selectFromBook().orderByTitleAsc().prefetch(Book_Schema.INSTANCE.publisher)) {
+            expected.add(book.publisher.get().name);
+        }
+        assertThat(names, is(expected));
+        assertThat(names, hasItems("foo bar", "baz"));
+    }
+
+    @Test
+    public void identityMap() throws Exception {
+        List<Book> books = db.selectFromBook().toList();
+        assertThat(books.get(0).publisher.get(), is(not(sameInstance(books.get(1).publisher.get()))));
+
+        IdentityMap identityMap = db.getConnection().openIdentityMap();
+        try {
+            assertThat(db.getConnection().getIdentityMap(), is(sameInstance(identityMap)));
+
+            books = db.selectFromBook().toList();
+            Publisher p1 = books.get(0).publisher.get();
+            assertThat(books.get(1).publisher.get(), is(sameInstance(p1)));
+            assertThat(db.selectFromBook().prefetch(Book_Schema.INSTANCE.publisher).value().publisher.get(),
+                    is(sameInstance(p1)));
+
+            // invalidated by updates
+            db.updatePublisher().startedYear(2000).execute();
+            Publisher p2 = db.selectFromBook().value().publisher.get();
+            assertThat(p2, is(not(sameInstance(p1))));
+            assertThat(p2.startedYear, is(2000));
+
+            // writes to another table do not invalidate it
+            db.insertIntoAuthor(Author.create("foo"));
+            assertThat(db.selectFromBook().value().publisher.get(), is(sameInstance(p2)));
+        } finally {
+            identityMap.close();
+        }
+        assertThat(db.getConnection().getIdentityMap(), is(nullValue()));
+        assertThat(identityMap.size(), is(0));
+    }
+
+    @Test
+    public void identityMapInTransaction() throws Exception {
+        final OrmaDatabase db = OrmaFactory.builder()
+                .identityMapInTransaction(true)
+                .build();
+        final Publisher publisher = db.relationOfPublisher().upsert(Publisher.create("foo", 2015, 1));
+        db.insertIntoBook(Book.create("a", publisher));
+        db.insertIntoBook(Book.create("b", publisher));
+
+        final List<Publisher> publishers = new ArrayList<>();
+        db.transactionSync(new Runnable() {
+            @Override
+            public void run() {
+                assertThat(db.getConnection().getIdentityMap(), is(notNullValue()));
+                for (Book book : db.selectFromBook()) {
+                    publishers.add(book.publisher.get());
+                }
+            }
+        });
+        assertThat(db.getConnection().getIdentityMap(), is(nullValue()));
+        assertThat(publishers, hasSize(2));
+        assertThat(publishers.get(0), is(sameInstance(publishers.get(1))));
+    }
+
+    @Test
+    public void selectColumns() throws Exception {
+        Book_Schema schema = Book_Schema.INSTANCE;
+
+        Book_Selector selector = db.selectFromBook().select(schema.title, schema.price).orderByTitleAsc();
+        assertThat(selector.buildQuery(), startsWith("SELECT " + schema.title.getQualifiedName() + ", "
+                + schema.price.getQualifiedName() + " FROM"));
+
+        List<Book> books = selector.toList();
+        assertThat(books, hasSize(2));
+        assertThat(books.get(0).title, is("friday"));
+        assertThat(books.get(0).price, is(100L));
+        assertThat(books.get(0).content, is(nullValue()));
+        assertThat(books.get(0).publisher, is(nullValue()));
+
+        assertThat(selector.get(1).title, is("today"));
+        assertThat(titles(IteratorUtils.listFromIterable(selector)), contains("friday", "today"));
+        assertThat(titles(IteratorUtils.listFromIterator(selector.keysetIterator())), contains("friday", "today"));
+
+        // select() without columns resets the projection
+        assertThat(selector.select().get(1).content, is("milk, banana"));
+    }
+
+    @Test
+    public void prepare() throws Exception {
+        PreparedSelector<Book> selector = db.selectFromBook()
+                .titleEq("")
+                .where(Book_Schema.INSTANCE.inPrint, "=", false)
+                .prepare();
+        assertThat(selector.getBindArgsCount(), is(2));
+        assertThat(selector.valueOrNull(), is(nullValue()));
+
+        selector.bindString(1, "today").bindBoolean(2, true);
+        assertThat(selector.value().content, is("milk, banana"));
+        assertThat(selector.toList(), hasSize(1));
+
+        selector.bindString(1, "friday");
+        assertThat(selector.valueOrNull(), is(nullValue()));
+
+        selector.bindBoolean(2, false);
+        assertThat(selector.value().content, is("apple"));
+
+        selector.clearBindings();
+        assertThat(selector.toList(), hasSize(0));
+
+        String sql = selector.getSql();
+        assertThat(selector.bindString(1, "today").getSql(), is(sameInstance(sql)));
+    }
+
+    @Test
+    public void typedBindArgs() throws Exception {
+        Book_Schema schema = Book_Schema.INSTANCE;
+
+        // compared as numbers, not as text
+        assertThat(db.selectFromBook().where(schema.price, ">", 99).count(), is(2));
+        assertThat(db.selectFromBook().where("typeof(?) = 'integer'", 42).count(), is(2));
+        assertThat(db.selectFromBook().where("typeof(?) = 'real'", 1.5).count(), is(2));
+        assertThat(db.selectFromBook().where("typeof(?) = 'blob'", (Object) new byte[]{1}).count(), is(2));
+        assertThat(db.selectFromBook().where("typeof(?) = 'integer'", 42).toList(), hasSize(2));
+        assertThat(db.selectFromBook().where("? IS NULL", (Object) null).toList(), hasSize(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void prepareWithInvalidBindIndex() throws Exception {
+        db.selectFromBook().titleEq("today").prepare().bindLong(2, 0);
+    }
+
+    static List<String> titles(List<Book> books) {
+        List<String> titles = new ArrayList<>();
+        for (Book book : books) {
+            titles.add(book.title);
+        }
+        return titles;
+    }
+
     @Test
     public void offset() throws Exception {
         try {
@@ -615,6 +935,48 @@ public class QueryTest {
         assertThat(db.selectFromBook().value().title, is("friday"));
     }
 
+    @Test
+    public void deleteInChunks() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            db.insertIntoAuthor(Author.create("author" + i));
+        }
+        final List<Integer> counts = new ArrayList<>();
+        int result = db.deleteFromAuthor()
+                .nameNotEq("author5")
+                .executeInChunks(3, new ChunkListener() {
+                    @Override
+                    public boolean onChunkCommitted(int count, int totalCount) {
+                        counts.add(count);
+                        return true;
+                    }
+                });
+
+        assertThat(result, is(9));
+        assertThat(counts, contains(3, 3, 3, 0));
+        assertThat(db.selectFromAuthor().count(), is(1));
+        assertThat(db.selectFromAuthor().value().name, is("author5"));
+    }
+
+    @Test
+    public void updateInChunksWithCancellation() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            db.insertIntoAuthor(Author.create("author" + i));
+        }
+        int result = db.updateAuthor()
+                .noteIsNull()
+                .note("updated")
+                .executeInChunks(4, new ChunkListener() {
+                    @Override
+                    public boolean onChunkCommitted(int count, int totalCount) {
+                        return totalCount < 8;
+                    }
+                });
+
+        assertThat(result, is(8));
+        assertThat(db.selectFromAuthor().noteEq("updated").count(), is(8));
+        assertThat(db.selectFromAuthor().noteIsNull().count(), is(2));
+    }
+
     @Test
     public void deleteViaRelation() throws Exception {
         int result = db.relationOfBook()
@@ -721,6 +1083,42 @@ public class QueryTest {
         assertThat(db.selectFromBook().count(), is(7));
     }
 
+    @Test
+    public void inserterExecuteAllInBatch() throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Book book = new Book();
+            book.title = "book " + i;
+            book.content = (i % 2) == 0 ? null : "content " + i;
+            book.price = i;
+            book.publisher = SingleAssociation.just(publisher);
+            books.add(book);
+        }
+
+        Inserter<Book> inserter = db.prepareInsertIntoBook();
+        assertThat(inserter.executeAllInBatch(books), is(1000));
+        inserter.close();
+
+        assertThat(db.selectFromBook().count(), is(1002));
+        Book book = db.selectFromBook().titleEq("book 999").value();
+        assertThat(book.content, is("content 999"));
+        assertThat(book.price, is(999L));
+        assertThat(db.selectFromBook().titleEq("book 998").value().content, is(nullValue()));
+    }
+
+    @Test
+    public void inserterExecuteAllInBatchWithOnConflictIgnore() throws Exception {
+        List<Author> authors = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Author author = new Author();
+            author.name = i == 2 ? "foo" : "bar";
+            authors.add(author);
+        }
+
+        assertThat(db.prepareInsertIntoAuthor(OnConflict.IGNORE).executeAllInBatch(authors), is(2));
+        assertThat(db.selectFromAuthor().count(), is(2));
+    }
+
     @Test
     public void inserterExecuteModelFactory() throws Exception {
         Inserter<Book> inserter = db.prepareInsertIntoBook();
@@ -20,6 +20,8 @@ import com.github.gfx.android.orma.Schema;
 import com.github.gfx.android.orma.test.model.Author_Schema;
 import com.github.gfx.android.orma.test.model.Book_Schema;
 import com.github.gfx.android.orma.test.model.Holder_Schema;
+import com.github.gfx.android.orma.test.model.ModelWithBlobStorageTypes;
+import com.github.gfx.android.orma.test.model.ModelWithBlobStorageTypes_Schema;
 import com.github.gfx.android.orma.test.model.ModelWithCompositeIndex_Schema;
 import com.github.gfx.android.orma.test.model.ModelWithDirectAssociation2_Schema;
 import com.github.gfx.android.orma.test.model.ModelWithDirectAssociation_Schema;
@@ -39,6 +41,7 @@ import org.junit.runner.RunWith;
 
 import android.support.test.runner.AndroidJUnit4;
 
+import java.util.Arrays;
 import java.util.List;
 
 import static org.hamcrest.MatcherAssert.*;
@@ -121,6 +124,18 @@ public class SchemaTest {
         ));
     }
 
+    @Test
+    public void testBlobStorageTypes() throws Exception {
+        ModelWithBlobStorageTypes_Schema schema = ModelWithBlobStorageTypes_Schema.INSTANCE;
+        assertThat(schema.list.storageType, is("BLOB"));
+        assertThat(schema.uuid.storageType, is("BLOB"));
+        assertThat(schema.bigDecimal.storageType, is("BLOB"));
+
+        ModelWithBlobStorageTypes model = new ModelWithBlobStorageTypes();
+        model.list = Arrays.asList("foo", "bar");
+        assertThat(schema.list.getSerialized(model), is(instanceOf(byte[].class)));
+    }
+
     @Test
     public void testStaticTypeAdapterStorageTypes() throws Exception {
         ModelWithTypeAdapters_Schema schema = ModelWithTypeAdapters_Schema.INSTANCE;
@@ -32,7 +32,10 @@ import org.junit.runner.RunWith;
 
 import android.support.test.runner.AndroidJUnit4;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.*;
@@ -156,6 +159,68 @@ public class UpsertTest {
         assertThat(db.relationOfModelWithNullableDirectAssociations().upsert(newModel).author, is(notNullValue()));
     }
 
+    @Test
+    public void upsertManyModels() throws Exception {
+        List<Book> books = new ArrayList<>();
+        Publisher publisher = db.relationOfPublisher().upsert(Publisher.create("foo", 2000, 1));
+        for (int i = 0; i < 10; i++) {
+            Book book = Book.create("book" + i, publisher);
+            book.bookId = i < 5 ? 0 : 100 + i;
+            books.add(book);
+        }
+        List<Book> newBooks = db.relationOfBook().upsert(books);
+        assertThat(newBooks, hasSize(10));
+        assertThat(db.selectFromBook().count(), is(10));
+        assertThat(db.selectFromPublisher().count(), is(1));
+        assertThat(newBooks.get(0).bookId, is(not(0L)));
+        assertThat("a missing auto id is newly assigned", newBooks.get(9).bookId, is(not(109L)));
+        assertThat(newBooks.get(9).publisher.get().name, is("foo"));
+
+        for (Book book : newBooks) {
+            book.title += "!";
+        }
+        db.relationOfBook().upsertWithoutReading(newBooks);
+        assertThat(db.selectFromBook().count(), is(10));
+        assertThat(db.selectFromBook().titleEq("book0!").count(), is(1));
+        assertThat(db.selectFromBook().titleEq("book9!").count(), is(1));
+    }
+
+    @Test
+    public void upsertSharedAssociationOnce() throws Exception {
+        // the publisher is new and its name is unique, so it fails if upserted more than once
+        Publisher publisher = Publisher.create("foo", 2000, 1);
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            books.add(Book.create("book" + i, publisher));
+        }
+        List<Book> newBooks = db.relationOfBook().upsert(books);
+        assertThat(db.selectFromPublisher().count(), is(1));
+        assertThat(db.selectFromBook().count(), is(10));
+        long publisherId = db.selectFromPublisher().value().id;
+        for (Book book : newBooks) {
+            assertThat(book.publisher.getId(), is(publisherId));
+        }
+
+        // distinct instances with the same primary key; the first one wins
+        Publisher publisher1 = Publisher.create("bar", 2001, 1);
+        publisher1.id = publisherId;
+        Publisher publisher2 = Publisher.create("baz", 2002, 1);
+        publisher2.id = publisherId;
+        db.relationOfBook().upsertWithoutReading(Arrays.asList(
+                Book.create("book10", publisher1),
+                Book.create("book11", publisher2)));
+        assertThat(db.selectFromPublisher().count(), is(1));
+        assertThat(db.selectFromPublisher().value().name, is("bar"));
+        assertThat(db.selectFromBook().publisherEq(publisherId).count(), is(12));
+    }
+
+    @Test
+    public void sqliteVersion() throws Exception {
+        assertThat(db.getConnection().getSqliteVersion(), startsWith("3."));
+        assertThat(db.getConnection().isSqliteVersionAtLeast(3, 0), is(true));
+        assertThat(db.getConnection().isSqliteVersionAtLeast(4, 0), is(false));
+    }
+
     // -------------------------
 
     @Test
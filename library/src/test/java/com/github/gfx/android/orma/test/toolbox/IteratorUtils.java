@@ -18,6 +18,7 @@ package com.github.gfx.android.orma.test.toolbox;
 
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 public class IteratorUtils {
@@ -28,4 +29,12 @@ public class IteratorUtils {
         }
         return list;
     }
+
+    public static <T> List<T> listFromIterator(Iterator<T> iterator) {
+        List<T> list = new ArrayList<>();
+        while (iterator.hasNext()) {
+            list.add(iterator.next());
+        }
+        return list;
+    }
 }
@@ -22,6 +22,7 @@ import com.github.gfx.android.orma.migration.sqliteparser.SQLiteComponent;
 import com.github.gfx.android.orma.migration.sqliteparser.SQLiteParserUtils;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 
 import android.annotation.SuppressLint;
 import android.content.ContentValues;
@@ -35,6 +36,7 @@ import android.util.Pair;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -42,6 +44,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 @SuppressLint("Assert")
 public class SchemaDiffMigration extends AbstractMigrationEngine {
@@ -79,6 +87,24 @@ public class SchemaDiffMigration extends AbstractMigrationEngine {
             + kArgs + " TEXT NULL, "
             + kCreatedTimestamp + " DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP)";
 
+    /**
+     * The number of rows to copy in a transaction when a table is re-created.
+     */
+    public static final int COPY_CHUNK_SIZE = BuildConfig.DEBUG ? 2 : 10000;
+
+    /**
+     * The {@code db_version} of checkpoints of copying tables, which never matches {@code PRAGMA schema_version}
+     * so that an interrupted migration is started again.
+     */
+    static final int CHECKPOINT_DB_VERSION = -1;
+
+    static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    /**
+     * The max number of threads to parse "CREATE TABLE" statements.
+     */
+    static final int PARSER_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
     final String versionName;
 
     final int versionCode;
@@ -89,6 +115,13 @@ public class SchemaDiffMigration extends AbstractMigrationEngine {
 
     private boolean tableCreated = false;
 
+    /**
+     * Parsed "CREATE TABLE" statements keyed by their SQL, shared by the parser threads and valid only during
+     * {@link #diffAll(Map, List)}.
+     */
+    final Map<String, CreateTableStatement> parsedTables = Collections.synchronizedMap(
+            new HashMap<String, CreateTableStatement>());
+
     public SchemaDiffMigration(@NonNull Context context, @NonNull String schemaHash, @NonNull TraceListener traceListener) {
         super(traceListener);
         this.versionName = extractVersionName(context);
@@ -164,6 +197,11 @@ public class SchemaDiffMigration extends AbstractMigrationEngine {
 
     @NonNull
     private Pair<Integer, String> fetchSchemaVersions(Database db) {
+        // The history table exists except for the first run, where the check is a read
+        // but CREATE TABLE IF NOT EXISTS takes the write lock even if the table exists.
+        if (!tableCreated && SQLiteMaster.checkIfTableNameExists(db, MIGRATION_STEPS_TABLE)) {
+            tableCreated = true;
+        }
         ensureHistoryTableExists(db);
         Cursor cursor = db.query(MIGRATION_STEPS_TABLE, new String[]{kDbVersion, kSchemaHash},
                 null, null, null, null, kId + " DESC", "1");
@@ -212,6 +250,27 @@ public class SchemaDiffMigration extends AbstractMigrationEngine {
     @NonNull
     public List<String> diffAll(@NonNull Map<String, ? extends MigrationSchema> srsSchemas,
             @NonNull List<? extends MigrationSchema> dstSchemas) {
+        try {
+            return diffAllWithParsedTables(srsSchemas, dstSchemas);
+        } finally {
+            parsedTables.clear();
+        }
+    }
+
+    @NonNull
+    private List<String> diffAllWithParsedTables(@NonNull Map<String, ? extends MigrationSchema> srsSchemas,
+            @NonNull List<? extends MigrationSchema> dstSchemas) {
+        // parse the tables which differ as strings in advance
+        Set<String> createTableStatements = new LinkedHashSet<>();
+        for (MigrationSchema dstSchema : dstSchemas) {
+            MigrationSchema srcSchema = srsSchemas.get(dstSchema.getTableName());
+            if (srcSchema != null && !srcSchema.getCreateTableStatement().equals(dstSchema.getCreateTableStatement())) {
+                createTableStatements.add(srcSchema.getCreateTableStatement());
+                createTableStatements.add(dstSchema.getCreateTableStatement());
+            }
+        }
+        parseCreateTableStatements(createTableStatements);
+
         List<String> statements = new ArrayList<>();
 
         // NOTE: ignore tables which exist only in database
@@ -224,7 +283,9 @@ public class SchemaDiffMigration extends AbstractMigrationEngine {
                 List<String> tableDiffStatements = tableDiff(srcSchema.getCreateTableStatement(),
                         dstSchema.getCreateTableStatement());
 
-                if (tableDiffStatements.isEmpty()) {
+                if (!isRecreatingTable(tableDiffStatements)) {
+                    // the table is kept as it is or altered, where the indexes are also kept
+                    statements.addAll(tableDiffStatements);
                     statements.addAll(indexDiff(srcSchema.getCreateIndexStatements(), dstSchema.getCreateIndexStatements()));
                 } else {
                     // This table needs re-create, where all the indexes are also dropped.
@@ -237,12 +298,27 @@ public class SchemaDiffMigration extends AbstractMigrationEngine {
     }
 
     /**
+     * Only the statements which differ as strings are parsed.
+     *
      * @param srcIndexes Set of "CREATE INDEX" statements which the DB has
      * @param dstIndexes Set of "CREATE INDEX" statements which the running code has
      * @return List of "CREATED INDEX" statements to apply to DB
      */
     @NonNull
     public List<String> indexDiff(@NonNull Collection<String> srcIndexes, @NonNull Collection<String> dstIndexes) {
+        // statements that are the same as strings are not parsed
+        Set<String> commonIndexes = new LinkedHashSet<>(srcIndexes);
+        commonIndexes.retainAll(dstIndexes);
+        if (!commonIndexes.isEmpty()) {
+            srcIndexes = new LinkedHashSet<>(srcIndexes);
+            srcIndexes.removeAll(commonIndexes);
+            dstIndexes = new LinkedHashSet<>(dstIndexes);
+            dstIndexes.removeAll(commonIndexes);
+        }
+        if (srcIndexes.isEmpty() && dstIndexes.isEmpty()) {
+            return Collections.emptyList();
+        }
+
         LinkedHashMap<CreateIndexStatement, String> unionIndexes = new LinkedHashMap<>();
 
         Map<CreateIndexStatement, String> srcIndexesPairs = parseIndexes(srcIndexes);
@@ -273,8 +349,8 @@ public class SchemaDiffMigration extends AbstractMigrationEngine {
             return Collections.emptyList();
         }
 
-        CreateTableStatement fromTable = SQLiteParserUtils.parseIntoCreateTableStatement(from);
-        CreateTableStatement toTable = SQLiteParserUtils.parseIntoCreateTableStatement(to);
+        CreateTableStatement fromTable = parseCreateTableStatement(from);
+        CreateTableStatement toTable = parseCreateTableStatement(to);
 
         Set<CreateTableStatement.ColumnDef> toColumns = new LinkedHashSet<>();
         Set<SQLiteComponent.Name> toColumnNames = new LinkedHashSet<>();
@@ -297,15 +373,109 @@ public class SchemaDiffMigration extends AbstractMigrationEngine {
             }
         }
 
-        if (intersectionColumns.size() != toTable.getColumns().size() ||
-                intersectionColumns.size() != fromTable.getColumns().size() ||
-                !fromTable.getConstraints().equals(toTable.getConstraints())) {
-            trace("from: %s", from);
-            trace("to:   %s", to);
-            return util.buildRecreateTable(fromTable, toTable, intersectionColumnNames, intersectionColumnNames);
-        } else {
-            return Collections.emptyList();
+        if (intersectionColumns.size() == fromTable.getColumns().size() &&
+                fromTable.getConstraints().equals(toTable.getConstraints())) {
+            // all the columns are kept, so the new columns might be added without copying the table
+            List<String> statements = buildAddColumns(fromTable.getTableName(), toTable.getColumns(), intersectionColumns);
+            if (statements != null) {
+                if (!statements.isEmpty()) {
+                    trace("from: %s", from);
+                    trace("to:   %s", to);
+                }
+                return statements;
+            }
         }
+
+        trace("from: %s", from);
+        trace("to:   %s", to);
+        return util.buildRecreateTable(fromTable, toTable, intersectionColumnNames, intersectionColumnNames);
+    }
+
+    /**
+     * @param sql A "CREATE TABLE" statement
+     * @return The parsed statement, which may be shared during {@link #diffAll(Map, List)} and must not be modified
+     */
+    @NonNull
+    CreateTableStatement parseCreateTableStatement(@NonNull String sql) {
+        CreateTableStatement statement = parsedTables.get(sql);
+        if (statement == null) {
+            statement = SQLiteParserUtils.parseIntoCreateTableStatement(sql);
+        }
+        return statement;
+    }
+
+    /**
+     * Parses "CREATE TABLE" statements with {@link #PARSER_THREADS} threads if there are two or more of them.
+     */
+    void parseCreateTableStatements(@NonNull Collection<String> sqls) {
+        final List<Callable<CreateTableStatement>> tasks = new ArrayList<>();
+        for (final String sql : sqls) {
+            if (!parsedTables.containsKey(sql)) {
+                tasks.add(new Callable<CreateTableStatement>() {
+                    @Override
+                    public CreateTableStatement call() throws Exception {
+                        CreateTableStatement statement = SQLiteParserUtils.parseIntoCreateTableStatement(sql);
+                        parsedTables.put(sql, statement);
+                        return statement;
+                    }
+                });
+            }
+        }
+
+        int nThreads = Math.min(PARSER_THREADS, tasks.size());
+        if (nThreads < 2) {
+            return; // parsed lazily
+        }
+
+        trace("parse %d CREATE TABLE statements with %d threads", tasks.size(), nThreads);
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "Orma-Migration-Parser");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            for (Future<CreateTableStatement> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // the rest are parsed lazily
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return {@code ALTER TABLE ADD COLUMN} statements, or {@code null} if any of the columns cannot be added
+     */
+    @Nullable
+    private List<String> buildAddColumns(SQLiteComponent.Name table, List<CreateTableStatement.ColumnDef> toColumns,
+            Collection<CreateTableStatement.ColumnDef> existingColumns) {
+        List<String> statements = new ArrayList<>();
+        for (CreateTableStatement.ColumnDef column : toColumns) {
+            if (existingColumns.contains(column)) {
+                continue;
+            }
+            if (!util.canAddColumn(column)) {
+                return null;
+            }
+            statements.add(util.buildAddColumn(table, column));
+        }
+        return statements;
+    }
+
+    static boolean isRecreatingTable(List<String> tableDiffStatements) {
+        return !tableDiffStatements.isEmpty() && tableDiffStatements.get(0).startsWith("CREATE TABLE ");
     }
 
     @NonNull
@@ -331,25 +501,184 @@ public class SchemaDiffMigration extends AbstractMigrationEngine {
         db.insertOrThrow(MIGRATION_STEPS_TABLE, null, values);
     }
 
+    /**
+     * Executes {@code statements} in a transaction, except that the tables to re-create are copied into temporary
+     * tables in advance, in chunks of {@link #COPY_CHUNK_SIZE} rows, each of which is committed in its own transaction
+     * with a checkpoint in the history table. If the copy is interrupted, the next migration resumes it from the
+     * checkpoint. The rest, including {@code DROP TABLE} and {@code ALTER TABLE ... RENAME TO} of all the tables,
+     * runs in the final transaction, so the schema is changed all or nothing.
+     */
     public void executeStatements(final Database db, final List<String> statements) {
         if (statements.isEmpty()) {
             return;
         }
 
+        final List<String> restStatements = new ArrayList<>();
+        boolean copied = false;
+        for (int i = 0; i < statements.size(); i++) {
+            if (i + 1 < statements.size() && isCopyToTempTable(statements.get(i + 1))) {
+                copyInChunks(db, statements.get(i), statements.get(i + 1));
+                copied = true;
+                i++;
+            } else {
+                restStatements.add(statements.get(i));
+            }
+        }
+
         transaction(db, new Runnable() {
             @Override
             public void run() {
-                for (String statement : statements) {
+                for (String statement : restStatements) {
                     trace("%s", statement);
                     db.execSQL(statement);
                 }
 
                 int dbVersion = fetchDbVersion(db);
                 for (String statement : statements) {
+                    if (isCopyToTempTable(statement)) {
+                        deleteCheckpoint(db, statement);
+                    }
                     saveStep(db, dbVersion, statement);
                 }
             }
         });
+
+        if (copied) {
+            incrementalVacuum(db);
+        }
+    }
+
+    static boolean isCopyToTempTable(String statement) {
+        return statement.startsWith("INSERT INTO `" + SqliteDdlBuilder.TEMP_TABLE_PREFIX);
+    }
+
+    /**
+     * @param createTempTable {@code CREATE TABLE `__temp_X` (...)}
+     * @param copy            {@code INSERT INTO `__temp_X` (...) SELECT ... FROM `X`}
+     */
+    void copyInChunks(final Database db, final String createTempTable, final String copy) {
+        final SQLiteComponent.Name tempTable = SQLiteParserUtils.parseIntoCreateTableStatement(createTempTable)
+                .getTableName();
+        SQLiteComponent.Name sourceTable = new SQLiteComponent.Name(
+                tempTable.getUnquotedToken().substring(SqliteDdlBuilder.TEMP_TABLE_PREFIX.length()));
+
+        final long[] lowerBound = {Long.MIN_VALUE};
+        Long checkpoint = findCheckpoint(db, copy);
+        if (checkpoint != null && createTempTable.equals(findCreateTableStatement(db, tempTable.getUnquotedToken()))) {
+            trace("resume copying into %s from _rowid_ > %d", tempTable, checkpoint);
+            lowerBound[0] = checkpoint;
+        } else {
+            transaction(db, new Runnable() {
+                @Override
+                public void run() {
+                    String dropTempTable = "DROP TABLE IF EXISTS " + tempTable;
+                    trace("%s", dropTempTable);
+                    db.execSQL(dropTempTable);
+                    trace("%s", createTempTable);
+                    db.execSQL(createTempTable);
+                    saveCheckpoint(db, copy, lowerBound[0]);
+                }
+            });
+        }
+
+        final String boundQuery = "SELECT `_rowid_` FROM " + sourceTable
+                + " WHERE `_rowid_` > ? ORDER BY `_rowid_` LIMIT 1 OFFSET " + (COPY_CHUNK_SIZE - 1);
+        final String lastChunkStatement = copy + " WHERE `_rowid_` > ?";
+        final String chunkStatement = lastChunkStatement + " AND `_rowid_` <= ?";
+
+        final boolean[] hasMoreChunks = {lowerBound[0] != Long.MAX_VALUE};
+        while (hasMoreChunks[0]) {
+            transaction(db, new Runnable() {
+                @Override
+                public void run() {
+                    Long upperBound = findUpperBound(db, boundQuery, lowerBound[0]);
+                    if (upperBound != null) {
+                        db.execSQL(chunkStatement, new Object[]{lowerBound[0], upperBound});
+                        lowerBound[0] = upperBound;
+                    } else {
+                        db.execSQL(lastChunkStatement, new Object[]{lowerBound[0]});
+                        lowerBound[0] = Long.MAX_VALUE; // means "done"
+                        hasMoreChunks[0] = false;
+                    }
+                    saveCheckpoint(db, copy, lowerBound[0]);
+                }
+            });
+            trace("copied rows into %s until _rowid_ = %d", tempTable, lowerBound[0]);
+        }
+    }
+
+    @Nullable
+    private static Long findUpperBound(Database db, String boundQuery, long lowerBound) {
+        Cursor cursor = db.rawQuery(boundQuery, new Object[]{lowerBound});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Saves the row id which {@code copy} has been committed until, updating the single checkpoint of {@code copy}.
+     */
+    void saveCheckpoint(Database db, String copy, long rowId) {
+        ContentValues values = new ContentValues();
+        values.put(kArgs, serializeArgs(new Object[]{rowId}));
+        int count = db.update(MIGRATION_STEPS_TABLE, values,
+                kDbVersion + " = " + CHECKPOINT_DB_VERSION + " AND " + kSql + " = ?", new String[]{copy});
+        if (count == 0) {
+            saveStep(db, CHECKPOINT_DB_VERSION, copy, rowId);
+        }
+    }
+
+    /**
+     * Deletes the checkpoint of {@code copy}, in the transaction that replaces the table with the copy.
+     */
+    void deleteCheckpoint(Database db, String copy) {
+        db.execSQL("DELETE FROM " + MIGRATION_STEPS_TABLE
+                + " WHERE " + kDbVersion + " = " + CHECKPOINT_DB_VERSION + " AND " + kSql + " = ?", new Object[]{copy});
+    }
+
+    /**
+     * @return The row id which {@code copy} has been committed until, or {@code null} if it has not started
+     */
+    @Nullable
+    private Long findCheckpoint(Database db, String copy) {
+        ensureHistoryTableExists(db);
+        Cursor cursor = db.query(MIGRATION_STEPS_TABLE, new String[]{kArgs},
+                kDbVersion + " = " + CHECKPOINT_DB_VERSION + " AND " + kSql + " = ?", new String[]{copy},
+                null, null, kId + " DESC", "1");
+        try {
+            if (cursor.moveToFirst()) {
+                return new JSONArray(cursor.getString(0)).getLong(0);
+            } else {
+                return null;
+            }
+        } catch (JSONException e) {
+            return null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Nullable
+    private static String findCreateTableStatement(Database db, String tableName) {
+        Cursor cursor = db.rawQuery("SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[]{tableName});
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the free pages of the dropped tables to the file system if {@code auto_vacuum} is {@code INCREMENTAL}.
+     */
+    void incrementalVacuum(Database db) {
+        if (db.longForQuery("PRAGMA auto_vacuum", null) == AUTO_VACUUM_INCREMENTAL) {
+            trace("PRAGMA incremental_vacuum");
+            db.execSQL("PRAGMA incremental_vacuum");
+        }
     }
 
     private static int fetchDbVersion(Database db) {
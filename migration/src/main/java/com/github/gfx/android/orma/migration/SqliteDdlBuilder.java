@@ -24,9 +24,16 @@ import android.support.annotation.NonNull;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 
 public class SqliteDdlBuilder {
 
+    public static final String TEMP_TABLE_PREFIX = "__temp_";
+
+    static final SQLiteComponent.Keyword UNIQUE = new SQLiteComponent.Keyword("UNIQUE");
+
+    static final SQLiteComponent.Keyword REFERENCES = new SQLiteComponent.Keyword("REFERENCES");
+
     @NonNull
     public static String ensureEscaped(@NonNull String name) {
         return '`' + ensureNotEscaped(name) + '`';
@@ -80,7 +87,7 @@ public class SqliteDdlBuilder {
 
         List<String> statements = new ArrayList<>();
 
-        SQLiteComponent.Name tempTableName = new SQLiteComponent.Name("__temp_" + toTableName.getUnquotedToken());
+        SQLiteComponent.Name tempTableName = new SQLiteComponent.Name(TEMP_TABLE_PREFIX + toTableName.getUnquotedToken());
 
         statements.add(buildCreateTable(tempTableName, toTable.getColumns()));
 
@@ -90,6 +97,48 @@ public class SqliteDdlBuilder {
         return statements;
     }
 
+    @NonNull
+    public String buildAddColumn(@NonNull SQLiteComponent.Name table, @NonNull CreateTableStatement.ColumnDef column) {
+        return "ALTER TABLE " + table + " ADD COLUMN " + column;
+    }
+
+    /**
+     * Checks the restrictions of {@code ALTER TABLE ADD COLUMN}, where existing rows get the default value of the column.
+     *
+     * @param column A column to add
+     * @return {@code true} if {@code column} can be added by {@link #buildAddColumn(SQLiteComponent.Name, CreateTableStatement.ColumnDef)}
+     * @see <a href="https://www.sqlite.org/lang_altertable.html">SQLite Query Language: ALTER TABLE</a>
+     */
+    public boolean canAddColumn(@NonNull CreateTableStatement.ColumnDef column) {
+        boolean nullable = true;
+        boolean references = false;
+        String defaultExpr = null;
+
+        for (CreateTableStatement.ColumnDef.Constraint constraint : column.getConstraints()) {
+            if (constraint.isPrimaryKey() || constraint.getTokens().contains(UNIQUE)) {
+                return false;
+            }
+            if (!constraint.isNullable()) {
+                nullable = false;
+            }
+            if (constraint.getTokens().contains(REFERENCES)) {
+                references = true;
+            }
+            if (constraint.getDefaultExpr() != null) {
+                defaultExpr = constraint.getDefaultExpr().toUpperCase(Locale.US);
+            }
+        }
+
+        if (defaultExpr == null || defaultExpr.equals("NULL")) {
+            return nullable;
+        } else if (defaultExpr.startsWith("(") || defaultExpr.startsWith("CURRENT_")) {
+            // not a constant
+            return false;
+        } else {
+            // a foreign key column must default to NULL
+            return !references;
+        }
+    }
 
     @NonNull
     public String buildDropTable(@NonNull SQLiteComponent.Name table) {
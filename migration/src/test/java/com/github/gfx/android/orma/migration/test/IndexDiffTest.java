@@ -124,7 +124,22 @@ public class IndexDiffTest {
                 "CREATE INDEX IF NOT EXISTS `index_foo` ON `t` (`foo`, `bar`)"
         ));
     }
-}
-
 
+    @Test
+    public void indexDiff_sameStatements() throws Exception {
+        assertThat(migration.indexDiff(Arrays.asList(
+                "CREATE INDEX IF NOT EXISTS `index_foo` ON `t` (`foo`)",
+                "CREATE INDEX IF NOT EXISTS `index_bar` ON `t` (`bar`)"
+        ), Arrays.asList(
+                "CREATE INDEX IF NOT EXISTS `index_bar` ON `t` (`bar`)",
+                "CREATE INDEX IF NOT EXISTS `index_foo` ON `t` (`foo`)",
+                "CREATE INDEX IF NOT EXISTS `index_baz` ON `t` (`baz`)"
+        )), contains(
+                "CREATE INDEX IF NOT EXISTS `index_baz` ON `t` (`baz`)"
+        ));
 
+        // not parsed at all
+        assertThat(migration.indexDiff(Collections.singletonList("not an index"),
+                Collections.singletonList("not an index")), is(empty()));
+    }
+}
@@ -17,8 +17,10 @@ package com.github.gfx.android.orma.migration.test;
 
 import com.github.gfx.android.orma.core.Database;
 import com.github.gfx.android.orma.core.DefaultDatabase;
+import com.github.gfx.android.orma.migration.MigrationEngine;
 import com.github.gfx.android.orma.migration.SQLiteMaster;
 import com.github.gfx.android.orma.migration.SchemaDiffMigration;
+import com.github.gfx.android.orma.migration.TraceListener;
 import com.github.gfx.android.orma.migration.test.util.SchemaData;
 
 import org.junit.After;
@@ -27,6 +29,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import android.content.Context;
+import android.support.annotation.NonNull;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
@@ -38,6 +41,7 @@ import java.util.Map;
 
 import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
 
 @RunWith(AndroidJUnit4.class)
 public class SchemaDiffMigrationTest {
@@ -161,7 +165,7 @@ public class SchemaDiffMigrationTest {
 
     @Test
     public void recreateTableWithIndexes() throws Exception {
-        schemas.set(0, new SchemaData("foo", "CREATE TABLE `foo` (`field01` TEXT, `field02` TEXT, `field03` TEXT)",
+        schemas.set(0, new SchemaData("foo", "CREATE TABLE `foo` (`field01` TEXT, `field02` TEXT NOT NULL)",
                 "CREATE INDEX `index_field01_on_foo` ON `foo` (`field01`)",
                 "CREATE INDEX `index_field02_on_foo` ON `foo` (`field02`)"
         ));
@@ -171,6 +175,129 @@ public class SchemaDiffMigrationTest {
         assertThat(migration.diffAll(SchemaDiffMigration.loadMetadata(db, schemas), schemas), is(empty()));
     }
 
+    @Test
+    public void recreateTablesParsedInParallel() throws Exception {
+        schemas.set(0, new SchemaData("foo", "CREATE TABLE `foo` (`field01` TEXT, `field02` TEXT NOT NULL)"));
+        schemas.set(1, new SchemaData("bar", "CREATE TABLE `bar` (`field10` TEXT UNIQUE, `field20` TEXT)"));
+        statements = migration.diffAll(metadata, schemas);
+
+        List<String> expected = new ArrayList<>();
+        expected.addAll(migration.tableDiff(metadata.get("foo").getCreateTableStatement(),
+                schemas.get(0).getCreateTableStatement()));
+        expected.addAll(migration.tableDiff(metadata.get("bar").getCreateTableStatement(),
+                schemas.get(1).getCreateTableStatement()));
+        assertThat(statements, is(expected));
+        assertThat(statements, hasItem("DROP TABLE `foo`"));
+        assertThat(statements, hasItem("DROP TABLE `bar`"));
+    }
+
+    @Test
+    public void addColumnWithIndexes() throws Exception {
+        schemas.set(0, new SchemaData("foo", "CREATE TABLE `foo` (`field01` TEXT, `field02` TEXT, `field03` TEXT)",
+                "CREATE INDEX `index_field01_on_foo` ON `foo` (`field01`)",
+                "CREATE INDEX `index_field02_on_foo` ON `foo` (`field02`)"
+        ));
+        statements = migration.diffAll(metadata, schemas);
+
+        assertThat(statements, contains("ALTER TABLE `foo` ADD COLUMN `field03` TEXT"));
+    }
+
+    @Test
+    public void resumeInterruptedRecreation() throws Exception {
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        db.execSQL("VACUUM");
+        for (int i = 0; i < 4; i++) {
+            db.execSQL("INSERT INTO foo (field01, field02) VALUES ('a" + i + "', 'b" + i + "')");
+        }
+
+        schemas.set(0, new SchemaData("foo", "CREATE TABLE `foo` (`field01` TEXT NOT NULL, `field02` TEXT)",
+                "CREATE INDEX `index_field01_on_foo` ON `foo` (`field01`)",
+                "CREATE INDEX `index_field02_on_foo` ON `foo` (`field02`)"
+        ));
+        List<String> recreation = migration.diffAll(metadata, schemas);
+
+        SchemaDiffMigration interrupted = new SchemaDiffMigration(getContext(), SCHEMA_HASH, new TraceListener() {
+            int chunks = 0;
+
+            @Override
+            public void onTrace(@NonNull MigrationEngine engine, @NonNull String format, @NonNull Object[] args) {
+                if (format.startsWith("copied") && ++chunks == 2) {
+                    throw new RuntimeException("interrupted");
+                }
+            }
+        });
+        try {
+            interrupted.executeStatements(db, recreation);
+            fail("not reached");
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage(), is("interrupted"));
+        }
+        assertThat(db.queryNumEntries("__temp_foo", null, null), is(2L * SchemaDiffMigration.COPY_CHUNK_SIZE));
+        assertThat(migration.isSchemaChanged(db), is(true));
+        assertThat("a single checkpoint for the copy",
+                db.queryNumEntries(SchemaDiffMigration.MIGRATION_STEPS_TABLE, "db_version = -1", null), is(1L));
+
+        final List<String> traces = new ArrayList<>();
+        migration = new SchemaDiffMigration(getContext(), SCHEMA_HASH, new TraceListener() {
+            @Override
+            public void onTrace(@NonNull MigrationEngine engine, @NonNull String format, @NonNull Object[] args) {
+                traces.add(format);
+            }
+        });
+        migration.executeStatements(db, recreation);
+
+        assertThat(traces, hasItem(startsWith("resume")));
+        assertThat(traces, hasItem("PRAGMA incremental_vacuum"));
+        assertThat(db.queryNumEntries("foo", null, null), is(5L));
+        assertThat(SQLiteMaster.checkIfTableNameExists(db, "__temp_foo"), is(false));
+        assertThat("checkpoints are deleted with the swap",
+                db.queryNumEntries(SchemaDiffMigration.MIGRATION_STEPS_TABLE, "db_version = -1", null), is(0L));
+        assertThat(db.longForQuery("PRAGMA freelist_count", null), is(0L));
+        assertThat(migration.diffAll(SchemaDiffMigration.loadMetadata(db, schemas), schemas), is(empty()));
+    }
+
+    @Test
+    public void resumeInterruptedRecreationOfTwoTables() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            db.execSQL("INSERT INTO foo (field01, field02) VALUES ('a" + i + "', 'b" + i + "')");
+            db.execSQL("INSERT INTO bar (field10, field20) VALUES ('c" + i + "', 'd" + i + "')");
+        }
+        String fooSchema = metadata.get("foo").getCreateTableStatement();
+
+        schemas.set(0, new SchemaData("foo", "CREATE TABLE `foo` (`field01` TEXT NOT NULL, `field02` TEXT)"));
+        schemas.set(1, new SchemaData("bar", "CREATE TABLE `bar` (`field10` TEXT UNIQUE, `field20` TEXT)"));
+        List<String> recreation = migration.diffAll(metadata, schemas);
+
+        SchemaDiffMigration interrupted = new SchemaDiffMigration(getContext(), SCHEMA_HASH, new TraceListener() {
+            @Override
+            public void onTrace(@NonNull MigrationEngine engine, @NonNull String format, @NonNull Object[] args) {
+                if (format.startsWith("copied") && args[0].toString().contains("__temp_bar")) {
+                    throw new RuntimeException("interrupted");
+                }
+            }
+        });
+        try {
+            interrupted.executeStatements(db, recreation);
+            fail("not reached");
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage(), is("interrupted"));
+        }
+        Map<String, SQLiteMaster> interruptedMetadata = SchemaDiffMigration.loadMetadata(db, schemas);
+        assertThat("the first table is not swapped yet",
+                interruptedMetadata.get("foo").getCreateTableStatement(), is(fooSchema));
+        assertThat(db.queryNumEntries(SchemaDiffMigration.MIGRATION_STEPS_TABLE, "db_version = -1", null), is(2L));
+        assertThat(migration.diffAll(interruptedMetadata, schemas), is(recreation));
+
+        migration.executeStatements(db, recreation);
+
+        assertThat(db.queryNumEntries("foo", null, null), is(5L));
+        assertThat(db.queryNumEntries("bar", null, null), is(5L));
+        assertThat(SQLiteMaster.checkIfTableNameExists(db, "__temp_foo"), is(false));
+        assertThat(SQLiteMaster.checkIfTableNameExists(db, "__temp_bar"), is(false));
+        assertThat(db.queryNumEntries(SchemaDiffMigration.MIGRATION_STEPS_TABLE, "db_version = -1", null), is(0L));
+        assertThat(migration.diffAll(SchemaDiffMigration.loadMetadata(db, schemas), schemas), is(empty()));
+    }
+
     @Test
     public void migrationStepTableMigration1To2() throws Exception {
         // setup v1 table
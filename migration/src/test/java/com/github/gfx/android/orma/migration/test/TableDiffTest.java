@@ -111,20 +111,64 @@ public class TableDiffTest {
         List<String> statements = migration.tableDiff(from, to);
 
         assertThat(statements, contains(
-                "CREATE TABLE `__temp_todo` (`title` TEXT, `content` TEXT)",
+                "ALTER TABLE `todo` ADD COLUMN `content` TEXT"));
+    }
+
+    @Test
+    public void addTowColumns() throws Exception {
+        String from = "CREATE TABLE todo (title TEXT)";
+        String to = "CREATE TABLE todo (title TEXT, content TEXT, createdDate TIMESTAMP)";
+        List<String> statements = migration.tableDiff(from, to);
+
+        assertThat(statements, contains(
+                "ALTER TABLE `todo` ADD COLUMN `content` TEXT",
+                "ALTER TABLE `todo` ADD COLUMN `createdDate` TIMESTAMP"));
+    }
+
+    @Test
+    public void addNonNullColumnWithDefault() throws Exception {
+        String from = "CREATE TABLE todo (title TEXT)";
+        String to = "CREATE TABLE todo (title TEXT, done BOOLEAN NOT NULL DEFAULT 0)";
+        List<String> statements = migration.tableDiff(from, to);
+
+        assertThat(statements, contains(
+                "ALTER TABLE `todo` ADD COLUMN `done` BOOLEAN NOT NULL DEFAULT 0"));
+    }
+
+    @Test
+    public void addNonNullColumnWithoutDefault() throws Exception {
+        String from = "CREATE TABLE todo (title TEXT)";
+        String to = "CREATE TABLE todo (title TEXT, content TEXT NOT NULL)";
+        List<String> statements = migration.tableDiff(from, to);
+
+        assertThat(statements, contains(
+                "CREATE TABLE `__temp_todo` (`title` TEXT, `content` TEXT NOT NULL)",
                 "INSERT INTO `__temp_todo` (`title`) SELECT `title` FROM `todo`",
                 "DROP TABLE `todo`",
                 "ALTER TABLE `__temp_todo` RENAME TO `todo`"));
     }
 
     @Test
-    public void addTowColumns() throws Exception {
+    public void addColumnsWithUnaddableOne() throws Exception {
         String from = "CREATE TABLE todo (title TEXT)";
-        String to = "CREATE TABLE todo (title TEXT, content TEXT, createdDate TIMESTAMP)";
+        String to = "CREATE TABLE todo (title TEXT, content TEXT, createdTime TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
         List<String> statements = migration.tableDiff(from, to);
 
         assertThat(statements, contains(
-                "CREATE TABLE `__temp_todo` (`title` TEXT, `content` TEXT, `createdDate` TIMESTAMP)",
+                "CREATE TABLE `__temp_todo` (`title` TEXT, `content` TEXT, `createdTime` TIMESTAMP DEFAULT CURRENT_TIMESTAMP)",
+                "INSERT INTO `__temp_todo` (`title`) SELECT `title` FROM `todo`",
+                "DROP TABLE `todo`",
+                "ALTER TABLE `__temp_todo` RENAME TO `todo`"));
+    }
+
+    @Test
+    public void addUniqueColumn() throws Exception {
+        String from = "CREATE TABLE todo (title TEXT)";
+        String to = "CREATE TABLE todo (title TEXT, content TEXT UNIQUE)";
+        List<String> statements = migration.tableDiff(from, to);
+
+        assertThat(statements, contains(
+                "CREATE TABLE `__temp_todo` (`title` TEXT, `content` TEXT UNIQUE)",
                 "INSERT INTO `__temp_todo` (`title`) SELECT `title` FROM `todo`",
                 "DROP TABLE `todo`",
                 "ALTER TABLE `__temp_todo` RENAME TO `todo`"));
@@ -216,10 +260,7 @@ public class TableDiffTest {
         List<String> statements = migration.tableDiff(from, to);
 
         assertThat(statements, contains(
-                "CREATE TABLE `__temp_todo` (`title` TEXT, `content` TEXT)",
-                "INSERT INTO `__temp_todo` (`title`) SELECT `title` FROM `todo`",
-                "DROP TABLE `todo`",
-                "ALTER TABLE `__temp_todo` RENAME TO `todo`"));
+                "ALTER TABLE `todo` ADD COLUMN `content` TEXT"));
     }
 
     @Test
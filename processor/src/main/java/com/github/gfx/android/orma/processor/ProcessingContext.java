@@ -67,12 +67,17 @@ public class ProcessingContext {
 
     private final Map<TypeName, TypeAdapterDefinition> typeAdapterMap = new HashMap<>();
 
+    private final Map<TypeName, TypeAdapterDefinition> blobTypeAdapterMap = new HashMap<>();
+
     public ProcessingContext(ProcessingEnvironment processingEnv) {
         this.processingEnv = processingEnv;
         typeUtils = processingEnv.getTypeUtils();
         for (TypeAdapterDefinition typeAdapterDefinition : TypeAdapterDefinition.BUILTINS) {
             addTypeAdapterDefinition(typeAdapterDefinition);
         }
+        for (TypeAdapterDefinition typeAdapterDefinition : TypeAdapterDefinition.BLOB_BUILTINS) {
+            blobTypeAdapterMap.put(typeAdapterDefinition.targetType, typeAdapterDefinition);
+        }
     }
 
     public void addError(String message, Element element) {
@@ -156,6 +161,20 @@ public class ProcessingContext {
         return typeAdapterMap.get(typeName);
     }
 
+    /**
+     * @return A built-in type adapter for {@code @Column(storageType = "BLOB")}, which is used unless
+     * {@code @StaticTypeAdapter} is defined for the type
+     */
+    @Nullable
+    public TypeAdapterDefinition findBlobTypeAdapter(TypeMirror typeMirror) {
+        TypeName typeName = TypeName.get(typeMirror);
+        TypeAdapterDefinition typeAdapter = typeAdapterMap.get(typeName);
+        if (typeAdapter != null && !typeAdapter.builtin) {
+            return null;
+        }
+        return blobTypeAdapterMap.get(typeName);
+    }
+
     @Nullable
     public TypeAdapterDefinition findTypeAdapter(TypeMirror typeMirror) {
         if (typeMirror.getKind().isPrimitive()) {
@@ -149,7 +149,8 @@ public class DatabaseWriter extends BaseWriter {
         builder.addMethod(MethodSpec.methodBuilder("build")
                 .addModifiers(Modifier.PUBLIC)
                 .returns(getClassName())
-                .addStatement("return new $T(new $T(fillDefaults(), $L))", getClassName(), ormaConnectionType, SCHEMAS)
+                .addStatement("return new $T(onConnectionCreated(new $T(fillDefaults(), $L)))", getClassName(),
+                        ormaConnectionType, SCHEMAS)
                 .build());
 
         return builder.build();
@@ -15,8 +15,6 @@
  */
 package com.github.gfx.android.orma.processor.generator;
 
-import com.github.gfx.android.orma.annotation.Column;
-import com.github.gfx.android.orma.annotation.OnConflict;
 import com.github.gfx.android.orma.processor.ProcessingContext;
 import com.github.gfx.android.orma.processor.exception.ProcessingException;
 import com.github.gfx.android.orma.processor.model.AssociationDefinition;
@@ -24,12 +22,14 @@ import com.github.gfx.android.orma.processor.model.ColumnDefinition;
 import com.github.gfx.android.orma.processor.model.SchemaDefinition;
 import com.github.gfx.android.orma.processor.util.Annotations;
 import com.github.gfx.android.orma.processor.util.Types;
+import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.ParameterSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 
 import java.util.ArrayList;
@@ -119,6 +119,24 @@ public class RelationWriter extends BaseWriter {
                 .addCode(buildUpsert("model"))
                 .build());
 
+        if (schema.getPrimaryKey().isPresent()
+                && schema.getColumns().stream().anyMatch(ColumnDefinition::isAssociation)) {
+            methodSpecs.add(MethodSpec.methodBuilder("convertToUpsertArgs")
+                    .addAnnotations(Annotations.overrideAndNonNull())
+                    .addModifiers(Modifier.PROTECTED)
+                    .addParameter(
+                            ParameterSpec.builder(Types.getUpserter(schema.getModelClassName()), "upserter")
+                                    .addAnnotation(Annotations.nonNull())
+                                    .build())
+                    .addParameter(
+                            ParameterSpec.builder(schema.getModelClassName(), "model")
+                                    .addAnnotation(Annotations.nonNull())
+                                    .build())
+                    .returns(ArrayTypeName.of(TypeName.OBJECT))
+                    .addCode(buildConvertToUpsertArgs("model"))
+                    .build());
+        }
+
         methodSpecs.add(MethodSpec.methodBuilder("selector")
                 .addAnnotations(Annotations.overrideAndNonNull())
                 .addModifiers(Modifier.PUBLIC)
@@ -148,56 +166,46 @@ public class RelationWriter extends BaseWriter {
     private CodeBlock buildUpsert(String modelExpr) {
         CodeBlock.Builder code = CodeBlock.builder();
 
-        Optional<ColumnDefinition> optionalPrimaryKey = schema.getPrimaryKey();
-
-        if (!optionalPrimaryKey.isPresent()) {
+        if (!schema.getPrimaryKey().isPresent()) {
             return code.addStatement("throw new $T($S)",
                     UnsupportedOperationException.class,
                     "upsert is not supported because of missing @PrimaryKey"
             ).build();
         }
 
-        ColumnDefinition primaryKey = optionalPrimaryKey.get();
-
-        if (!primaryKey.hasHelper(Column.Helpers.CONDITION_EQ)) {
-            return code.addStatement("throw new $T($S)",
-                    UnsupportedOperationException.class,
-                    "upsert is not supported because of missing @PrimaryKey's CONDITION_EQ helper"
-            ).build();
-        }
-
-        // build contentValues
-
-        code.addStatement("$T contentValues = new $T()", Types.ContentValues, Types.ContentValues);
-
-        for (ColumnDefinition column : schema.getColumnsWithoutAutoId()) {
-            CodeBlock expr = upsertColumnAndGet(modelExpr, column);
-            code.addStatement("contentValues.put($S, $L)", column.getEscapedColumnName(), expr);
-        }
+        code.addStatement("$T<$T> upserter = new $T<>(this)",
+                Types.Upserter, schema.getModelClassName(), Types.Upserter);
+        code.beginControlFlow("try");
+        code.addStatement("return upserter.executeAndRead($L)", modelExpr);
+        code.nextControlFlow("finally");
+        code.addStatement("upserter.close()");
+        code.endControlFlow();
 
-        // only "auto = true" supports conditional UPDATE
-        if (primaryKey.autoId) {
-            code.beginControlFlow("if ($L != 0)", primaryKey.buildGetColumnExpr(modelExpr));
-        }
+        return code.build();
+    }
 
-        code.addStatement("int updatedRows = updater().$LEq($L).putAll(contentValues).execute()",
-                primaryKey.name, primaryKey.buildGetColumnExpr(modelExpr));
-        code.beginControlFlow("if (updatedRows != 0)");
-        code.addStatement("return selector().$LEq($L).value()",
-                primaryKey.name, primaryKey.buildGetColumnExpr(modelExpr));
-        code.endControlFlow();
+    /**
+     * Overwrites the foreign keys in {@code convertToArgs()} with those of the upserted associated models,
+     * where each associated model is upserted once by the upserter shared in the upsert.
+     */
+    private CodeBlock buildConvertToUpsertArgs(String modelExpr) {
+        CodeBlock.Builder code = CodeBlock.builder();
 
-        if (primaryKey.autoId) {
-            code.endControlFlow();
+        code.addStatement("$T[] args = super.convertToUpsertArgs(upserter, $L)", Object.class, modelExpr);
+        List<ColumnDefinition> columns = schema.getColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnDefinition column = columns.get(i);
+            if (column.isAssociation()) {
+                code.add(upsertColumnAndSet(modelExpr, column, i));
+            }
         }
-
-        code.addStatement("long rowId = conn.insert(schema, contentValues, $T.NONE)", OnConflict.class);
-        code.addStatement("return conn.findByRowId(schema, rowId)");
+        code.addStatement("return args");
 
         return code.build();
     }
 
-    private CodeBlock upsertColumnAndGet(String modelExpr, ColumnDefinition column) {
+    private CodeBlock upsertColumnAndSet(String modelExpr, ColumnDefinition column, int index) {
+        CodeBlock.Builder code = CodeBlock.builder();
         AssociationDefinition r = column.getAssociation();
 
         CodeBlock expr;
@@ -205,15 +213,18 @@ public class RelationWriter extends BaseWriter {
         if (r != null) {
             SchemaDefinition associatedSchema = context.getSchemaDef(r.getModelType());
             CodeBlock associatedSchemaExpr = CodeBlock.of("$T.INSTANCE", associatedSchema.getSchemaClassName());
-            CodeBlock associatedModelExpr;
-            if (r.isSingleAssociation()) {
-                associatedModelExpr = CodeBlock.of("$L.get()", column.buildGetColumnExpr(modelExpr));
-            } else {
-                associatedModelExpr = CodeBlock.of("$L", column.buildGetColumnExpr(modelExpr));
-            }
 
-            CodeBlock newAssociatedModelExpr = CodeBlock.of("new $T(conn, $L).upsertWithoutTransaction($L)",
-                    associatedSchema.getRelationClassName(), associatedSchemaExpr, associatedModelExpr);
+            String upserterName = column.name + "Upserter";
+            code.addStatement("$T $L = upserter.getAssociationUpserter($L)",
+                    Types.getUpserter(associatedSchema.getModelClassName()), upserterName, associatedSchemaExpr);
+            code.beginControlFlow("if ($L == null)", upserterName);
+            code.addStatement("$L = upserter.addAssociationUpserter(new $T(conn, $L))",
+                    upserterName, associatedSchema.getRelationClassName(), associatedSchemaExpr);
+            code.endControlFlow();
+
+            // SingleAssociation is passed as is not to load the model if it has been upserted
+            CodeBlock newAssociatedModelExpr = CodeBlock.of("$L.upsertOnce($L)",
+                    upserterName, column.buildGetColumnExpr(modelExpr));
 
             ColumnDefinition associatedKey = associatedSchema.getPrimaryKey()
                     .orElseThrow(() -> new ProcessingException("No explicit primary key defined",
@@ -224,9 +235,10 @@ public class RelationWriter extends BaseWriter {
         }
 
         if (column.isNullableInJava()) {
-            return CodeBlock.of("$L != null ? $L : null", column.buildGetColumnExpr(modelExpr), expr);
+            code.addStatement("args[$L] = $L != null ? $L : null", index, column.buildGetColumnExpr(modelExpr), expr);
         } else {
-            return expr;
+            code.addStatement("args[$L] = $L", index, expr);
         }
+        return code.build();
     }
 }
@@ -582,6 +582,29 @@ public class SchemaWriter extends BaseWriter {
                                         .addAnnotation(Annotations.nonNull())
                                         .build())
                         .addParameter(boolean.class, withoutAutoId)
+                        .addStatement("bindArgs(conn, statement, model, $L, 0)", withoutAutoId)
+                        .build()
+        );
+
+        methodSpecs.add(
+                MethodSpec.methodBuilder("bindArgs")
+                        .addAnnotation(Annotations.override())
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(TypeName.VOID)
+                        .addParameter(
+                                ParameterSpec.builder(Types.OrmaConnection, "conn")
+                                        .addAnnotation(Annotations.nonNull())
+                                        .build())
+                        .addParameter(
+                                ParameterSpec.builder(Types.DatabaseStatement, "statement")
+                                        .addAnnotation(Annotations.nonNull())
+                                        .build())
+                        .addParameter(
+                                ParameterSpec.builder(schema.getModelClassName(), "model")
+                                        .addAnnotation(Annotations.nonNull())
+                                        .build())
+                        .addParameter(boolean.class, withoutAutoId)
+                        .addParameter(int.class, "offset")
                         .addCode(buildBindArgs())
                         .build()
         );
@@ -604,6 +627,74 @@ public class SchemaWriter extends BaseWriter {
                         .build()
         );
 
+        methodSpecs.add(
+                MethodSpec.methodBuilder("readInto")
+                        .addAnnotations(Annotations.overrideAndNonNull())
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(schema.getModelClassName())
+                        .addParameter(
+                                ParameterSpec.builder(Types.OrmaConnection, "conn")
+                                        .addAnnotation(Annotations.nonNull())
+                                        .build())
+                        .addParameter(
+                                ParameterSpec.builder(schema.getModelClassName(), "model")
+                                        .addAnnotation(Annotations.nonNull())
+                                        .build())
+                        .addParameter(
+                                ParameterSpec.builder(Types.Cursor, "cursor")
+                                        .addAnnotation(Annotations.nonNull())
+                                        .build())
+                        .addParameter(int.class, "offset")
+                        .addCode(buildReadInto())
+                        .build()
+        );
+
+        methodSpecs.add(
+                MethodSpec.methodBuilder("newModelFromCursor")
+                        .addAnnotations(Annotations.overrideAndNonNull())
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(schema.getModelClassName())
+                        .addParameter(
+                                ParameterSpec.builder(Types.OrmaConnection, "conn")
+                                        .addAnnotation(Annotations.nonNull())
+                                        .build())
+                        .addParameter(
+                                ParameterSpec.builder(Types.Cursor, "cursor")
+                                        .addAnnotation(Annotations.nonNull())
+                                        .build())
+                        .addParameter(
+                                ParameterSpec.builder(Types.getColumnDefList(schema.getModelClassName()), "columns")
+                                        .addAnnotation(Annotations.nonNull())
+                                        .build())
+                        .addCode(buildNewPartialModelFromCursor())
+                        .build()
+        );
+
+        methodSpecs.add(
+                MethodSpec.methodBuilder("readInto")
+                        .addAnnotations(Annotations.overrideAndNonNull())
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(schema.getModelClassName())
+                        .addParameter(
+                                ParameterSpec.builder(Types.OrmaConnection, "conn")
+                                        .addAnnotation(Annotations.nonNull())
+                                        .build())
+                        .addParameter(
+                                ParameterSpec.builder(schema.getModelClassName(), "model")
+                                        .addAnnotation(Annotations.nonNull())
+                                        .build())
+                        .addParameter(
+                                ParameterSpec.builder(Types.Cursor, "cursor")
+                                        .addAnnotation(Annotations.nonNull())
+                                        .build())
+                        .addParameter(
+                                ParameterSpec.builder(Types.getColumnDefList(schema.getModelClassName()), "columns")
+                                        .addAnnotation(Annotations.nonNull())
+                                        .build())
+                        .addCode(buildPartialReadInto())
+                        .build()
+        );
+
         return methodSpecs;
     }
 
@@ -678,7 +769,7 @@ public class SchemaWriter extends BaseWriter {
 
         List<ColumnDefinition> columns = schema.getColumns();
         for (int i = 0; i < columns.size(); i++) {
-            int n = i + 1; // bind index starts 1
+            CodeBlock n = CodeBlock.of("offset + $L", i + 1); // bind index starts 1
             ColumnDefinition c = columns.get(i);
 
             if (c.isNullableInJava()) {
@@ -810,6 +901,103 @@ public class SchemaWriter extends BaseWriter {
         });
     }
 
+    private CodeBlock buildReadInto() {
+        if (schema.getConstructorElement().isPresent()) {
+            // models with a @Setter constructor cannot be rewritten
+            return CodeBlock.builder()
+                    .addStatement("return newModelFromCursor(conn, cursor, offset)")
+                    .build();
+        }
+
+        CodeBlock.Builder block = CodeBlock.builder();
+        block.add(buildPopulateValuesFromCursor(column -> CodeBlock.of("model.")));
+        block.addStatement("return model");
+        return block.build();
+    }
+
+    /**
+     * Populates the columns in the order of {@code columns}, where each column is followed by the columns of
+     * its direct association, if any.
+     */
+    private CodeBlock buildPopulatePartialValuesFromCursor(Function<ColumnDefinition, CodeBlock> lhsBaseGen) {
+        CodeBlock.Builder builder = CodeBlock.builder();
+
+        builder.addStatement("int $$index = 0");
+        builder.beginControlFlow("for ($T $$column : columns)", Types.getColumnDef(schema.getModelClassName(), Types.WildcardType));
+        builder.beginControlFlow("switch ($$column.name)");
+        for (ColumnDefinition c : schema.getColumns()) {
+            builder.add("case $S:\n", c.columnName);
+            builder.indent();
+            builder.addStatement("$L$L", lhsBaseGen.apply(c),
+                    c.buildSetColumnExpr(buildGetValueFromCursor(c, CodeBlock.of("$$index"))));
+            if (Types.isDirectAssociation(context, c.getUnboxType())) {
+                builder.addStatement("$$index += $L", 1 + c.getAssociatedSchema().calculateConsumingColumnSize());
+            } else {
+                builder.addStatement("$$index++");
+            }
+            builder.addStatement("break");
+            builder.unindent();
+        }
+        builder.add("default:\n");
+        builder.indent();
+        builder.addStatement("throw new $T($S + $$column)", Types.IllegalArgumentException,
+                "No such column in " + schema.getModelClassName().simpleName() + ": ");
+        builder.unindent();
+        builder.endControlFlow();
+        builder.endControlFlow();
+
+        return builder.build();
+    }
+
+    private CodeBlock buildNewPartialModelFromCursor() {
+        return schema.getConstructorElement().map(constructorElement -> {
+            CodeBlock.Builder block = CodeBlock.builder();
+
+            // columns not in the projection are left as the default values
+            for (ColumnDefinition c : schema.getColumns()) {
+                TypeName type = c.getType();
+                if (type.equals(TypeName.BOOLEAN)) {
+                    block.addStatement("$T $L = false", type, c.name);
+                } else if (type.isPrimitive()) {
+                    block.addStatement("$T $L = ($T) 0", type, c.name, type);
+                } else {
+                    block.addStatement("$T $L = null", type, c.name);
+                }
+            }
+            block.add(buildPopulatePartialValuesFromCursor(column -> CodeBlock.of("")));
+
+            block.addStatement("return new $T($L)", schema.getModelClassName(),
+                    constructorElement.getParameters()
+                            .stream()
+                            .map(this::extractColumnNameFromParameterElement)
+                            .collect(Collectors.joining(", ")));
+
+            return block.build();
+        }).orElseGet(() -> {
+            CodeBlock.Builder block = CodeBlock.builder();
+
+            block.addStatement("$T model = new $T()", schema.getModelClassName(), schema.getModelClassName());
+            block.add(buildPopulatePartialValuesFromCursor(column -> CodeBlock.of("model.")));
+            block.addStatement("return model");
+
+            return block.build();
+        });
+    }
+
+    private CodeBlock buildPartialReadInto() {
+        if (schema.getConstructorElement().isPresent()) {
+            // models with a @Setter constructor cannot be rewritten
+            return CodeBlock.builder()
+                    .addStatement("return newModelFromCursor(conn, cursor, columns)")
+                    .build();
+        }
+
+        CodeBlock.Builder block = CodeBlock.builder();
+        block.add(buildPopulatePartialValuesFromCursor(column -> CodeBlock.of("model.")));
+        block.addStatement("return model");
+        return block.build();
+    }
+
     private String extractColumnNameFromParameterElement(VariableElement parameterElement) {
         Setter setter = parameterElement.getAnnotation(Setter.class);
         if (setter != null && !Strings.isEmpty(setter.value())) {
@@ -110,10 +110,12 @@ public class ColumnDefinition {
         columnName = columnName(column, element);
 
         type = ClassName.get(element.asType());
-        typeAdapter = schema.context.findTypeAdapter(element.asType());
-
         storageType = (column != null && !Strings.isEmpty(column.storageType())) ? column.storageType() : null;
 
+        TypeAdapterDefinition blobTypeAdapter = "BLOB".equalsIgnoreCase(storageType)
+                ? schema.context.findBlobTypeAdapter(element.asType()) : null;
+        typeAdapter = blobTypeAdapter != null ? blobTypeAdapter : schema.context.findTypeAdapter(element.asType());
+
         if (primaryKeyAnnotation != null) {
             primaryKeyOnConflict = primaryKeyAnnotation.onConflict();
             primaryKey = true;
@@ -413,6 +415,10 @@ public class ColumnDefinition {
             if (!typeAdapter.generic) {
                 return CodeBlock.of("$T.$L($L)",
                         typeAdapter.typeAdapterImpl, typeAdapter.getDeserializerName(), valueExpr);
+            } else if (typeAdapter.newInstanceInjected) {
+                // inject a new collection instead of Class<T> not to instantiate it reflectively
+                return CodeBlock.of("$T.$L($L, new $T())",
+                        typeAdapter.typeAdapterImpl, typeAdapter.getDeserializerName(), valueExpr, type);
             } else {
                 // inject Class<T> if the deserializer takes more than one
                 TypeName rawType = (type instanceof ParameterizedTypeName ? ((ParameterizedTypeName) type).rawType : type);
@@ -66,6 +66,22 @@ public class TypeAdapterDefinition {
             make(Types.getLinkedHashSet(Types.String), String.class, "StringCollection", true),
     };
 
+    /**
+     * Built-in type adapters for {@code @Column(storageType = "BLOB")}, which encode values in compact binary forms.
+     */
+    public static TypeAdapterDefinition[] BLOB_BUILTINS = {
+            make(BigDecimal.class, byte[].class, "BigDecimalAsBlob"),
+            make(UUID.class, byte[].class, "UUIDAsBlob"),
+            make(Types.getList(Types.String), byte[].class, "StringListAsBlob"),
+            make(Types.getSet(Types.String), byte[].class, "StringSetAsBlob"),
+
+            // use generic serializers with new collections
+            makeCollection(Types.getArrayList(Types.String), byte[].class, "StringCollectionAsBlob"),
+            makeCollection(Types.getHashSet(Types.String), byte[].class, "StringCollectionAsBlob"),
+            makeCollection(Types.getLinkedList(Types.String), byte[].class, "StringCollectionAsBlob"),
+            makeCollection(Types.getLinkedHashSet(Types.String), byte[].class, "StringCollectionAsBlob"),
+    };
+
     @Nullable
     public final TypeElement element;
 
@@ -87,6 +103,11 @@ public class TypeAdapterDefinition {
 
     public final boolean generic;
 
+    /**
+     * True if the deserializer takes a new instance of the target type, instead of {@code Class<T>}.
+     */
+    public final boolean newInstanceInjected;
+
     public final boolean builtin;
 
     public TypeAdapterDefinition(ProcessingContext context, Element element,
@@ -106,12 +127,13 @@ public class TypeAdapterDefinition {
         deserializerMethod = getBestFitDeserializer(context, element, deserializer, methods.get(deserializer));
 
         generic = deserializerMethod != null && deserializerMethod.getParameters().size() != 1;
+        newInstanceInjected = false;
         builtin = false;
     }
 
     // for built-in
     private TypeAdapterDefinition(ClassName typeAdapter, TypeName targetType, TypeName serializedType,
-            String serializer, String deserializer, boolean generic) {
+            String serializer, String deserializer, boolean generic, boolean newInstanceInjected) {
         this.element = null;
         this.typeAdapterImpl = typeAdapter;
         this.targetType = targetType;
@@ -121,6 +143,7 @@ public class TypeAdapterDefinition {
         this.serializerMethod = null;
         this.deserializerMethod = null;
         this.generic = generic;
+        this.newInstanceInjected = newInstanceInjected;
         this.builtin = true;
     }
 
@@ -142,13 +165,18 @@ public class TypeAdapterDefinition {
 
     public static TypeAdapterDefinition make(TypeName targetType, TypeName serializedType, String typeId) {
         return new TypeAdapterDefinition(Types.BuiltInSerializers, targetType, serializedType,
-                "serialize" + typeId, "deserialize" + typeId, false);
+                "serialize" + typeId, "deserialize" + typeId, false, false);
     }
 
     public static TypeAdapterDefinition make(TypeName targetType, Class<?> serializedType, String typeId,
             boolean generic) {
         return new TypeAdapterDefinition(Types.BuiltInSerializers, targetType, TypeName.get(serializedType),
-                "serialize" + typeId, "deserialize" + typeId, generic);
+                "serialize" + typeId, "deserialize" + typeId, generic, false);
+    }
+
+    public static TypeAdapterDefinition makeCollection(TypeName targetType, Class<?> serializedType, String typeId) {
+        return new TypeAdapterDefinition(Types.BuiltInSerializers, targetType, TypeName.get(serializedType),
+                "serialize" + typeId, "deserialize" + typeId, true, true);
     }
 
     private static Map<String, List<ExecutableElement>> collectMethods(TypeElement element) {
@@ -124,6 +124,8 @@ public class Types {
 
     public static final ClassName Inserter = ClassName.get(ormaPackageName, "Inserter");
 
+    public static final ClassName Upserter = ClassName.get(ormaPackageName, "Upserter");
+
     public static final ClassName RxInserter = ClassName.get(ormaRxPackageName, "RxInserter");
 
     public static final ClassName SingleAssociation = ClassName.get(ormaPackageName, "SingleAssociation");
@@ -261,6 +263,10 @@ public class Types {
         return ParameterizedTypeName.get(Inserter, typeName);
     }
 
+    public static ParameterizedTypeName getUpserter(TypeName typeName) {
+        return ParameterizedTypeName.get(Upserter, typeName);
+    }
+
     public static ParameterizedTypeName getRxInserter(TypeName typeName) {
         return ParameterizedTypeName.get(RxInserter, typeName);
     }